@@ -25,12 +25,9 @@ final class AndSqlFragment extends ConditionalSqlFragment {
 
   //-------------------------------------------------------------------------
   @Override
-  void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
-    if (isMatch(params, loopIndex)) {
-      if (endsWith(buf, " WHERE ") == false && endsWith(buf, " AND ") == false) {
-        buf.append("AND ");
-      }
-      super.toSQL(buf, fragments, params, loopIndex);
+  void appendPrefix(StringBuilder buf) {
+    if (endsWith(buf, " WHERE ") == false && endsWith(buf, " AND ") == false) {
+      buf.append("AND ");
     }
   }
 
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Canonicalizes literal SQL text so that equivalent source layouts produce identical SQL.
+ * <p>
+ * Outside of quoted text and quoted identifiers, including MySQL backtick and
+ * SQL Server bracket identifiers, Postgres dollar-quoted text, such as '$$a  b$$' or '$fn$a  b$fn$',
+ * and Postgres escape strings, such as E'it\'s', runs of whitespace are collapsed to a single space,
+ * whitespace is removed after an open bracket and before a close bracket or comma,
+ * a comma is followed by a single space, and common reserved keywords are output in upper case.
+ * Variables, such as ':from', tags, such as '@LOOPINDEX', and qualified names,
+ * such as 't.order', are not treated as keywords.
+ * <p>
+ * Leading and trailing whitespace is retained as a single space, as the text may be
+ * adjacent to other fragments.
+ * <p>
+ * Quoted text is only recognized within a single text fragment, thus a literal must not contain a tag.
+ * Canonicalization is applied when the text is parsed, using the config at that time,
+ * see {@link ElSqlConfig#isCanonicalText()}.
+ * <p>
+ * This class is thread-safe.
+ */
+final class CanonicalSql {
+
+  /**
+   * The reserved keywords output in upper case.
+   */
+  private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+      "ALL", "AND", "AS", "ASC", "BETWEEN", "BY", "CASE", "DELETE", "DESC", "DISTINCT", "ELSE", "END",
+      "EXISTS", "FROM", "GROUP", "HAVING", "IN", "INNER", "INSERT", "INTO", "IS", "JOIN", "LEFT", "LIKE",
+      "NOT", "NULL", "ON", "OR", "ORDER", "OUTER", "RIGHT", "SELECT", "SET", "THEN", "UNION", "UPDATE",
+      "VALUES", "WHEN", "WHERE"));
+
+  /**
+   * Restricted constructor.
+   */
+  private CanonicalSql() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Canonicalizes the text.
+   * 
+   * @param text  the literal SQL text, not null
+   * @return the canonical text, not null
+   */
+  static String canonicalize(String text) {
+    int len = text.length();
+    StringBuilder buf = new StringBuilder(len);
+    boolean space = false;
+    int i = 0;
+    while (i < len) {
+      char ch = text.charAt(i);
+      if (Character.isWhitespace(ch)) {
+        space = buf.length() == 0 || buf.charAt(buf.length() - 1) != '(';
+        i++;
+      } else if (ch == ',' || ch == ')') {
+        buf.append(ch);
+        space = (ch == ',');
+        i++;
+      } else if (ch == '$' || ((ch == 'E' || ch == 'e') && isEscapeString(text, i))) {
+        int end = (ch == '$' ? dollarQuoteEnd(text, i) : escapeStringEnd(text, i + 2));
+        if (end < 0) {
+          appendSpace(buf, space);
+          space = false;
+          buf.append(ch);
+          i++;
+        } else {
+          appendSpace(buf, space);
+          space = false;
+          buf.append(text, i, end);
+          i = end;
+        }
+      } else if (ch == '\'' || ch == '"' || ch == '`' || ch == '[') {
+        appendSpace(buf, space);
+        space = false;
+        int end = text.indexOf(ch == '[' ? ']' : ch, i + 1);
+        end = (end < 0 ? len : end + 1);
+        buf.append(text, i, end);
+        i = end;
+      } else if (isWordStart(ch)) {
+        appendSpace(buf, space);
+        space = false;
+        int end = i + 1;
+        while (end < len && isWordPart(text.charAt(end))) {
+          end++;
+        }
+        String word = text.substring(i, end);
+        String upper = word.toUpperCase(Locale.ENGLISH);
+        if (KEYWORDS.contains(upper) && isQualified(text, i, end) == false) {
+          buf.append(upper);
+        } else {
+          buf.append(word);
+        }
+        i = end;
+      } else {
+        appendSpace(buf, space);
+        space = false;
+        buf.append(ch);
+        i++;
+      }
+    }
+    appendSpace(buf, space);
+    return buf.toString();
+  }
+
+  // checks if the text at the index is the start of an escape string, such as E'a\'b'
+  private static boolean isEscapeString(String text, int index) {
+    return index + 1 < text.length() && text.charAt(index + 1) == '\'' &&
+        (index == 0 || isWordPart(text.charAt(index - 1)) == false);
+  }
+
+  // finds the end of an escape string, where a backslash escapes the next character
+  private static int escapeStringEnd(String text, int index) {
+    int i = index;
+    while (i < text.length()) {
+      char ch = text.charAt(i);
+      if (ch == '\\') {
+        i += 2;
+      } else if (ch == '\'' && i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+        i += 2;
+      } else if (ch == '\'') {
+        return i + 1;
+      } else {
+        i++;
+      }
+    }
+    return text.length();
+  }
+
+  // finds the end of a dollar-quoted string starting at the index, -1 if not dollar-quoted
+  private static int dollarQuoteEnd(String text, int index) {
+    int tagEnd = index + 1;
+    if (tagEnd < text.length() && isWordStart(text.charAt(tagEnd))) {
+      while (tagEnd < text.length() && isWordPart(text.charAt(tagEnd))) {
+        tagEnd++;
+      }
+    }
+    if (tagEnd >= text.length() || text.charAt(tagEnd) != '$') {
+      return -1;
+    }
+    String tag = text.substring(index, tagEnd + 1);
+    int end = text.indexOf(tag, tagEnd + 1);
+    return (end < 0 ? text.length() : end + tag.length());
+  }
+
+  // appends a space if required
+  private static void appendSpace(StringBuilder buf, boolean space) {
+    if (space) {
+      buf.append(' ');
+    }
+  }
+
+  // checks if the word is part of a variable, tag or qualified name
+  private static boolean isQualified(String text, int start, int end) {
+    if (start > 0) {
+      char before = text.charAt(start - 1);
+      if (before == ':' || before == '@' || before == '.' || before == '{' || before == '$' || isWordPart(before)) {
+        return true;
+      }
+    }
+    return end < text.length() && text.charAt(end) == '.';
+  }
+
+  // checks if the character starts a word
+  private static boolean isWordStart(char ch) {
+    return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || ch == '_';
+  }
+
+  // checks if the character is part of a word
+  private static boolean isWordPart(char ch) {
+    return isWordStart(ch) || (ch >= '0' && ch <= '9');
+  }
+
+}
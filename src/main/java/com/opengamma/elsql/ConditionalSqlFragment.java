@@ -5,6 +5,8 @@
  */
 package com.opengamma.elsql;
 
+import java.util.function.BiPredicate;
+
 /**
  * Representation of conditional SQL fragment.
  */
@@ -52,11 +54,12 @@ abstract class ConditionalSqlFragment extends ContainerSqlFragment {
   //-------------------------------------------------------------------------
   boolean isMatch(SqlParams params, int[] loopIndex) {
     String var = applyLoopIndex(_variable, loopIndex);
-    if (params.contains(var) == false) {
-      return false;
-    }
-    Object value = params.get(var);
-    if (value == null) {
+    return isMatch(params.lookup(var));
+  }
+
+  // checks if the value of the variable matches
+  private boolean isMatch(Object value) {
+    if (value == null || value == SqlParams.NOT_FOUND) {
       return false;
     }
     if (_matchValue != null) {
@@ -68,9 +71,66 @@ abstract class ConditionalSqlFragment extends ContainerSqlFragment {
     return true;
   }
 
+  /**
+   * Compiles the match, avoiding applying the loop index when the variable has no loop index tag.
+   * 
+   * @return the predicate testing the parameters and loop index, not null
+   */
+  BiPredicate<SqlParams, int[]> compileMatch() {
+    if (_variable.contains("@LOOPINDEX")) {
+      return this::isMatch;
+    }
+    String variable = _variable;
+    return (params, loopIndex) -> isMatch(params.lookup(variable));
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    if (isMatch(params, loopIndex)) {
+      renderMatched(buf, fragments, params, loopIndex, childrenRenderer());
+    }
+  }
+
+  @Override
+  SqlRenderer compile(SqlCompiler compiler) {
+    BiPredicate<SqlParams, int[]> match = compileMatch();
+    SqlRenderer body = compiler.compileChildren(this);
+    return (buf, fragments, params, loopIndex) -> {
+      if (match.test(params, loopIndex)) {
+        renderMatched(buf, fragments, params, loopIndex, body);
+      }
+    };
+  }
+
+  // renders the body once the condition has matched, shared by the interpreted and compiled forms
+  private void renderMatched(
+      StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex, SqlRenderer body) {
+    appendPrefix(buf);
+    body.render(buf, fragments, params, loopIndex);
+  }
+
+  /**
+   * Appends the text to output before the body when the condition matches.
+   * <p>
+   * The default implementation appends nothing.
+   * 
+   * @param buf  the buffer holding the SQL output so far, not null
+   */
+  void appendPrefix(StringBuilder buf) {
+  }
+
   boolean endsWith(StringBuilder buf, String match) {
-    String str = (buf.length() >= match.length() ? buf.substring(buf.length() - match.length()) : "");
-    return str.equals(match);
+    int start = buf.length() - match.length();
+    if (start < 0) {
+      return false;
+    }
+    for (int i = 0; i < match.length(); i++) {
+      if (buf.charAt(start + i) != match.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   //-------------------------------------------------------------------------
@@ -18,6 +18,10 @@ class ContainerSqlFragment extends SqlFragment {
    * The fragments.
    */
   private final List<SqlFragment> _fragments = new ArrayList<SqlFragment>();
+  /**
+   * The renderer of the children, allowing subclasses to share logic with their compiled form.
+   */
+  private final SqlRenderer _children = this::renderChildren;
 
   /**
    * Creates an empty container.
@@ -28,11 +32,33 @@ class ContainerSqlFragment extends SqlFragment {
   //-------------------------------------------------------------------------
   /**
    * Adds a fragment to the list in the container.
+   * <p>
+   * Text immediately following other text is merged into a single fragment.
    * 
    * @param childFragment  the child fragment, not null
    */
   void addFragment(SqlFragment childFragment) {
-    _fragments.add(childFragment);
+    int last = _fragments.size() - 1;
+    if (childFragment instanceof TextSqlFragment && last >= 0 && _fragments.get(last) instanceof TextSqlFragment) {
+      _fragments.set(last, ((TextSqlFragment) _fragments.get(last)).merge((TextSqlFragment) childFragment));
+    } else {
+      _fragments.add(childFragment);
+    }
+  }
+
+  /**
+   * Canonicalizes the text directly within this container, see {@link CanonicalSql}.
+   * <p>
+   * This is called once the container has been parsed, so that text merged
+   * from several lines is canonicalized as a whole.
+   */
+  void canonicalizeText() {
+    for (int i = 0; i < _fragments.size(); i++) {
+      SqlFragment fragment = _fragments.get(i);
+      if (fragment instanceof TextSqlFragment) {
+        _fragments.set(i, ((TextSqlFragment) fragment).canonicalize());
+      }
+    }
   }
 
   /**
@@ -44,11 +70,86 @@ class ContainerSqlFragment extends SqlFragment {
     return Collections.unmodifiableList(_fragments);
   }
 
+  /**
+   * Checks if this container, or any container within it, has a fragment of the specified type.
+   * <p>
+   * Included fragments are not checked.
+   * 
+   * @param type  the type of fragment to find, not null
+   * @return true if a fragment of the type is found
+   */
+  boolean containsFragment(Class<? extends SqlFragment> type) {
+    return findFragment(type) != null;
+  }
+
+  /**
+   * Finds the first fragment of the specified type in this container, or any container within it.
+   * <p>
+   * Included fragments are not checked.
+   * 
+   * @param <T>  the type of fragment
+   * @param type  the type of fragment to find, not null
+   * @return the fragment, null if not found
+   */
+  <T extends SqlFragment> T findFragment(Class<T> type) {
+    for (SqlFragment fragment : _fragments) {
+      if (type.isInstance(fragment)) {
+        return type.cast(fragment);
+      }
+      if (fragment instanceof ContainerSqlFragment) {
+        T found = ((ContainerSqlFragment) fragment).findFragment(type);
+        if (found != null) {
+          return found;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds all fragments of the specified type in this container, or any container within it.
+   * <p>
+   * Included fragments are not checked.
+   * 
+   * @param <T>  the type of fragment
+   * @param type  the type of fragment to find, not null
+   * @param found  the list to add the fragments to, not null
+   */
+  <T extends SqlFragment> void findFragments(Class<T> type, List<T> found) {
+    for (SqlFragment fragment : _fragments) {
+      if (type.isInstance(fragment)) {
+        found.add(type.cast(fragment));
+      }
+      if (fragment instanceof ContainerSqlFragment) {
+        ((ContainerSqlFragment) fragment).findFragments(type, found);
+      }
+    }
+  }
+
   //-------------------------------------------------------------------------
   @Override
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
-    for (SqlFragment fragment : _fragments) {
-      fragment.toSQL(buf, fragments, params, loopIndex);
+    renderChildren(buf, fragments, params, loopIndex);
+  }
+
+  /**
+   * Gets the renderer that interprets the children of this container.
+   * <p>
+   * Subclasses pass this to the rendering logic that they share with their compiled form,
+   * which is passed the renderer from {@link SqlCompiler#compileChildren(ContainerSqlFragment)} instead.
+   * 
+   * @return the renderer, not null
+   */
+  SqlRenderer childrenRenderer() {
+    return _children;
+  }
+
+  // renders each child in turn
+  private void renderChildren(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    // indexed loop avoids creating an iterator on each render
+    List<SqlFragment> children = _fragments;
+    for (int i = 0; i < children.size(); i++) {
+      children.get(i).toSQL(buf, fragments, params, loopIndex);
     }
   }
 
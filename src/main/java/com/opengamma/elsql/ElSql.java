@@ -6,6 +6,7 @@
 package com.opengamma.elsql;
 
 import java.net.URL;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -95,13 +96,18 @@ public final class ElSql {
    * 
    * @param fragments  the fragments to use, not null
    */
-  private ElSql(SqlFragments fragments) {
+  ElSql(SqlFragments fragments) {
     if (fragments == null) {
       throw new IllegalArgumentException("Fragment map must not be null");
     }
     _fragments = fragments;
   }
 
+  // package scoped for testing
+  SqlFragments getFragments() {
+    return _fragments;
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Gets the configuration object.
@@ -116,6 +122,8 @@ public final class ElSql {
    * Returns a copy of this bundle with a different configuration.
    * <p>
    * This does not reload the underlying resources.
+   * As such, the literal text remains canonicalized, or not, according to the config
+   * used when parsing, see {@link ElSqlConfig#isCanonicalText()}.
    * 
    * @param config  the new config, not null
    * @return a bundle with the config updated, not null
@@ -124,6 +132,30 @@ public final class ElSql {
     return new ElSql(_fragments.withConfig(config));
   }
 
+  /**
+   * Gets the listener notified of rendering.
+   * 
+   * @return the listener, null if none
+   */
+  public ElSqlListener getListener() {
+    return _fragments.getListener();
+  }
+
+  /**
+   * Returns a copy of this bundle with a listener notified of rendering.
+   * <p>
+   * This does not reload the underlying resources.
+   * The listener is notified each time SQL is obtained by name, with the time taken
+   * to render and the length of the SQL. See {@link ElSqlStatistics}.
+   * When there is no listener, no timing is performed.
+   * 
+   * @param listener  the listener, null to remove
+   * @return a bundle with the listener updated, not null
+   */
+  public ElSql withListener(ElSqlListener listener) {
+    return new ElSql(_fragments.withListener(listener));
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Finds SQL for a named fragment key, without specifying parameters.
@@ -177,4 +209,135 @@ public final class ElSql {
     return _fragments.getSql(name, new MapSqlParams(params));
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Finds SQL to count the rows of a paged named fragment key, providing the SQL parameters.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a PAGING tag.
+   * The returned SQL counts the rows that the SELECT within the PAGING tag would return
+   * if no paging was applied, using {@link ElSqlConfig#addCount(String)}.
+   * This allows the total number of rows to be queried without a separate named block.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the SQL, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or if the fragment does not contain a PAGING tag
+   * @throws RuntimeException if a problem occurs
+   */
+  public String getCountSql(String name, SqlParams params) {
+    return _fragments.getCountSql(name, params);
+  }
+
+  /**
+   * Finds SQL to count the rows of a paged named fragment key, providing a map of SQL parameters.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a PAGING tag.
+   * The returned SQL counts the rows that the SELECT within the PAGING tag would return
+   * if no paging was applied, using {@link ElSqlConfig#addCount(String)}.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the SQL, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or if the fragment does not contain a PAGING tag
+   * @throws RuntimeException if a problem occurs
+   */
+  public String getCountSql(String name, Map<String, Object> params) {
+    return _fragments.getCountSql(name, new MapSqlParams(params));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Finds SQL for a named fragment key with positional bind markers, providing the SQL parameters.
+   * <p>
+   * This finds, processes and returns a named block from the bundle.
+   * Each variable is replaced by a positional marker obtained from {@link ElSqlConfig#getBindMarker(int)},
+   * such as '?' for JDBC, '$1' for Postgres R2DBC and '@p1' for SQL Server R2DBC.
+   * The values of the variables are returned in marker order, ready to bind without re-parsing.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the SQL and values to bind, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws RuntimeException if a problem occurs
+   */
+  public PositionalSql getPositionalSql(String name, SqlParams params) {
+    return _fragments.getPositionalSql(name, params);
+  }
+
+  /**
+   * Finds SQL for a named fragment key with positional bind markers, providing a map of SQL parameters.
+   * <p>
+   * This finds, processes and returns a named block from the bundle.
+   * Each variable is replaced by a positional marker obtained from {@link ElSqlConfig#getBindMarker(int)}.
+   * The values of the variables are returned in marker order, ready to bind without re-parsing.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the SQL and values to bind, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws RuntimeException if a problem occurs
+   */
+  public PositionalSql getPositionalSql(String name, Map<String, Object> params) {
+    return _fragments.getPositionalSql(name, new MapSqlParams(params));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Finds SQL for a named fragment key containing a VALUES tag, split into chunks.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a VALUES tag.
+   * The rows of the list variable are split into chunks so that each statement stays within
+   * the limits of {@link ElSqlConfig#getMaxValuesRows()} and {@link ElSqlConfig#getMaxBindParameters()}.
+   * Each chunk must be executed using the parameters of the chunk, which resolve the row variables.
+   * All full chunks have the same SQL when the rows output the same variables.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the chunks, empty if there are no rows, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or if the fragment does not contain a VALUES tag
+   * @throws RuntimeException if a problem occurs
+   */
+  public List<SqlChunk> getChunkedSql(String name, SqlParams params) {
+    return _fragments.getChunkedSql(name, params);
+  }
+
+  /**
+   * Finds SQL for a named fragment key containing a VALUES tag, split into chunks,
+   * providing a map of SQL parameters.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a VALUES tag.
+   * The rows of the list variable are split into chunks so that each statement stays within
+   * the limits of {@link ElSqlConfig#getMaxValuesRows()} and {@link ElSqlConfig#getMaxBindParameters()}.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the chunks, empty if there are no rows, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or if the fragment does not contain a VALUES tag
+   * @throws RuntimeException if a problem occurs
+   */
+  public List<SqlChunk> getChunkedSql(String name, Map<String, Object> params) {
+    return _fragments.getChunkedSql(name, new MapSqlParams(params));
+  }
+
+  /**
+   * Finds SQL for a named fragment key, collecting the keys to insert into temporary tables.
+   * <p>
+   * This is used for IN tags with large lists, see {@link ElSqlConfig#getInTempTable(String, String)}.
+   * The keys are collected while rendering, thus only the IN tags that are output are included.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param inTempTables  the map to collect the keys into, keyed by table name, not null
+   * @return the SQL, not null
+   */
+  String getSql(String name, SqlParams params, Map<String, Object[]> inTempTables) {
+    return SqlRenderContext.render(inTempTables, () -> _fragments.getSql(name, params));
+  }
+
 }
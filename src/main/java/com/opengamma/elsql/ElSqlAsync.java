@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import com.opengamma.elsql.ElSqlJdbc.RowMapper;
+
+/**
+ * Executes elsql formatted SQL asynchronously using JDBC.
+ * <p>
+ * This class allows many independent queries to run concurrently, each returning a {@code CompletableFuture}.
+ * The SQL is rendered on the calling thread, so that errors in the parameters are reported immediately.
+ * Execution occurs on an executor, with each task obtaining a connection from the data source.
+ * The number of tasks using a connection at any one time is limited by a semaphore,
+ * protecting the connection pool from being exhausted.
+ * <p>
+ * By default, the executor creates a virtual thread per task when running on Java 21 or later,
+ * and a cached thread pool otherwise. Virtual threads are well suited to this class,
+ * as each task spends most of its time blocked on the semaphore or the database.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ElSqlAsync implements AutoCloseable {
+
+  /**
+   * The bundle.
+   */
+  private final ElSql _elsql;
+  /**
+   * The data source.
+   */
+  private final DataSource _dataSource;
+  /**
+   * The semaphore limiting the number of connections in use.
+   */
+  private final Semaphore _connections;
+  /**
+   * The executor.
+   */
+  private final ExecutorService _executor;
+  /**
+   * Whether to shutdown the executor when closed.
+   */
+  private final boolean _shutdownExecutor;
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates an instance that executes using the default executor.
+   * <p>
+   * The default executor uses a virtual thread per task if available.
+   * It is shutdown when this instance is closed.
+   * 
+   * @param elsql  the bundle, not null
+   * @param dataSource  the data source, not null
+   * @param maxConnections  the maximum number of connections to use at once, one or greater
+   * @return the instance, not null
+   */
+  public static ElSqlAsync of(ElSql elsql, DataSource dataSource, int maxConnections) {
+    return new ElSqlAsync(elsql, dataSource, maxConnections, createDefaultExecutor(), true);
+  }
+
+  /**
+   * Creates an instance that executes using the specified executor.
+   * <p>
+   * The executor is not shutdown when this instance is closed.
+   * 
+   * @param elsql  the bundle, not null
+   * @param dataSource  the data source, not null
+   * @param maxConnections  the maximum number of connections to use at once, one or greater
+   * @param executor  the executor, not null
+   * @return the instance, not null
+   */
+  public static ElSqlAsync of(ElSql elsql, DataSource dataSource, int maxConnections, ExecutorService executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor must not be null");
+    }
+    return new ElSqlAsync(elsql, dataSource, maxConnections, executor, false);
+  }
+
+  // creates a virtual thread per task executor if available
+  private static ExecutorService createDefaultExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ElSqlAsync");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates an instance.
+   * 
+   * @param elsql  the bundle, not null
+   * @param dataSource  the data source, not null
+   * @param maxConnections  the maximum number of connections to use at once
+   * @param executor  the executor, not null
+   * @param shutdownExecutor  whether to shutdown the executor when closed
+   */
+  private ElSqlAsync(
+      ElSql elsql, DataSource dataSource, int maxConnections, ExecutorService executor, boolean shutdownExecutor) {
+    if (elsql == null) {
+      throw new IllegalArgumentException("ElSql must not be null");
+    }
+    if (dataSource == null) {
+      throw new IllegalArgumentException("DataSource must not be null");
+    }
+    if (maxConnections < 1) {
+      throw new IllegalArgumentException("Maximum connections must be one or greater");
+    }
+    _elsql = elsql;
+    _dataSource = dataSource;
+    _connections = new Semaphore(maxConnections, true);
+    _executor = executor;
+    _shutdownExecutor = shutdownExecutor;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the bundle.
+   * 
+   * @return the bundle, not null
+   */
+  public ElSql getElSql() {
+    return _elsql;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Executes a named fragment key asynchronously as an update, such as INSERT, UPDATE or DELETE.
+   * <p>
+   * The SQL is rendered on the calling thread.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the future number of rows updated, which fails with {@link UncheckedSQLException}
+   *  if a database error occurs, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   */
+  public CompletableFuture<Integer> update(String name, SqlParams params) {
+    Map<String, Object[]> inTempTables = new LinkedHashMap<String, Object[]>();
+    String sql = _elsql.getSql(name, params, inTempTables);
+    return execute(jdbc -> {
+      jdbc.fillInTempTables(inTempTables);
+      return jdbc.updateSql(sql, params);
+    });
+  }
+
+  /**
+   * Executes a named fragment key asynchronously as an update, such as INSERT, UPDATE or DELETE.
+   * <p>
+   * The SQL is rendered on the calling thread.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the future number of rows updated, which fails with {@link UncheckedSQLException}
+   *  if a database error occurs, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   */
+  public CompletableFuture<Integer> update(String name, Map<String, Object> params) {
+    return update(name, new MapSqlParams(params));
+  }
+
+  /**
+   * Executes a named fragment key asynchronously as a query, mapping each row.
+   * <p>
+   * The SQL is rendered on the calling thread.
+   * 
+   * @param <T>  the type of the mapped row
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param rowMapper  the mapper for each row, not null
+   * @return the future list of mapped rows, which fails with {@link UncheckedSQLException}
+   *  if a database error occurs, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   */
+  public <T> CompletableFuture<List<T>> query(String name, SqlParams params, RowMapper<T> rowMapper) {
+    if (rowMapper == null) {
+      throw new IllegalArgumentException("RowMapper must not be null");
+    }
+    Map<String, Object[]> inTempTables = new LinkedHashMap<String, Object[]>();
+    String sql = _elsql.getSql(name, params, inTempTables);
+    return execute(jdbc -> {
+      jdbc.fillInTempTables(inTempTables);
+      return jdbc.querySql(sql, params, rowMapper);
+    });
+  }
+
+  /**
+   * Executes a named fragment key asynchronously as a query, mapping each row.
+   * <p>
+   * The SQL is rendered on the calling thread.
+   * 
+   * @param <T>  the type of the mapped row
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param rowMapper  the mapper for each row, not null
+   * @return the future list of mapped rows, which fails with {@link UncheckedSQLException}
+   *  if a database error occurs, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   */
+  public <T> CompletableFuture<List<T>> query(String name, Map<String, Object> params, RowMapper<T> rowMapper) {
+    return query(name, new MapSqlParams(params), rowMapper);
+  }
+
+  // executes the task on the executor, holding a permit and connection for its duration
+  private <R> CompletableFuture<R> execute(Function<ElSqlJdbc, R> task) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        _connections.acquire();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a connection", ex);
+      }
+      try (ElSqlJdbc jdbc = ElSqlJdbc.of(_elsql, _dataSource, 0)) {
+        return task.apply(jdbc);
+      } finally {
+        _connections.release();
+      }
+    }, _executor);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Closes this instance, shutting down the executor if it was created by this class.
+   * <p>
+   * Tasks that have already been submitted are allowed to complete.
+   */
+  @Override
+  public void close() {
+    if (_shutdownExecutor) {
+      _executor.shutdown();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "ElSqlAsync[" + _elsql.getConfig().getName() + "]";
+  }
+
+}
@@ -24,6 +24,11 @@ import org.springframework.jdbc.core.namedparam.SqlParameterSource;
  * The same functionality is available from the {@link ElSql} class, which does
  * not depend on Spring.
  * <p>
+ * Spring's {@code NamedParameterJdbcTemplate} expands a list into one marker per element,
+ * thus an IN tag that would bind a SQL array or use a temporary table, such as '= ANY(:ids)' on Postgres,
+ * is rejected with an {@code IllegalArgumentException}. The padded IN list output on other databases
+ * is supported by wrapping the parameters in {@link IndexedSqlParameterSource} when executing.
+ * <p>
  * This class is immutable and thread-safe.
  */
 public final class ElSqlBundle {
@@ -92,6 +97,7 @@ public final class ElSqlBundle {
 
   private static ElSqlBundle parseResource(Resource[] resources, ElSqlConfig config) {
     List<List<String>> files = new ArrayList<List<String>>();
+    List<String> sources = new ArrayList<String>();
     boolean resourceFound = false;
     for (Resource resource : resources) {
       if (resource.exists()) {
@@ -104,12 +110,13 @@ public final class ElSqlBundle {
         }
         List<String> lines = SqlFragments.loadResource(url);
         files.add(lines);
+        sources.add(url.toString());
       }
     }
     if (!resourceFound) {
       throw new IllegalArgumentException("No matching resource was found");
     }
-    return new ElSqlBundle(SqlFragments.parse(files, config));
+    return new ElSqlBundle(SqlFragments.parse(files, sources, config));
   }
 
   //-------------------------------------------------------------------------
@@ -139,6 +146,8 @@ public final class ElSqlBundle {
    * Returns a copy of this bundle with a different configuration.
    * <p>
    * This does not reload the underlying resources.
+   * As such, the literal text remains canonicalized, or not, according to the config
+   * used when parsing, see {@link ElSqlConfig#isCanonicalText()}.
    * 
    * @param config  the new config, not null
    * @return a bundle with the config updated, not null
@@ -147,6 +156,30 @@ public final class ElSqlBundle {
     return new ElSqlBundle(_fragments.withConfig(config));
   }
 
+  /**
+   * Gets the listener notified of rendering.
+   * 
+   * @return the listener, null if none
+   */
+  public ElSqlListener getListener() {
+    return _fragments.getListener();
+  }
+
+  /**
+   * Returns a copy of this bundle with a listener notified of rendering.
+   * <p>
+   * This does not reload the underlying resources.
+   * The listener is notified each time SQL is obtained by name, with the time taken
+   * to render and the length of the SQL. See {@link ElSqlStatistics}.
+   * When there is no listener, no timing is performed.
+   * 
+   * @param listener  the listener, null to remove
+   * @return a bundle with the listener updated, not null
+   */
+  public ElSqlBundle withListener(ElSqlListener listener) {
+    return new ElSqlBundle(_fragments.withListener(listener));
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Finds SQL for a named fragment key, without specifying parameters.
@@ -174,11 +207,53 @@ public final class ElSqlBundle {
    * @param name  the name, not null
    * @param paramSource  the Spring SQL parameters, not null
    * @return the SQL, not null
-   * @throws IllegalArgumentException if there is no fragment with the specified name
+   * @throws IllegalArgumentException if there is no fragment with the specified name,
+   *  or if an IN tag would bind a SQL array
    * @throws RuntimeException if a problem occurs
    */
   public String getSql(String name, SqlParameterSource paramSource) {
-    return _fragments.getSql(name, new SpringSqlParams(paramSource));
+    return SqlRenderContext.renderWithoutArrays(() -> _fragments.getSql(name, new SpringSqlParams(paramSource)));
+  }
+
+  /**
+   * Finds SQL to count the rows of a paged named fragment key.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a PAGING tag.
+   * The returned SQL counts the rows that the SELECT within the PAGING tag would return
+   * if no paging was applied, using {@link ElSqlConfig#addCount(String)}.
+   * 
+   * @param name  the name, not null
+   * @param paramSource  the Spring SQL parameters, not null
+   * @return the SQL, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or if the fragment does not contain a PAGING tag
+   * @throws RuntimeException if a problem occurs
+   */
+  public String getCountSql(String name, SqlParameterSource paramSource) {
+    return SqlRenderContext.renderWithoutArrays(
+        () -> _fragments.getCountSql(name, new SpringSqlParams(paramSource)));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Finds SQL for a named fragment key containing a VALUES tag, split into chunks.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a VALUES tag.
+   * The rows of the list variable are split into chunks so that each statement stays within
+   * the limits of {@link ElSqlConfig#getMaxValuesRows()} and {@link ElSqlConfig#getMaxBindParameters()}.
+   * When executing a chunk, the values from {@link SqlChunk#getRowValues()} must be
+   * added to the Spring parameters.
+   * 
+   * @param name  the name, not null
+   * @param paramSource  the Spring SQL parameters, not null
+   * @return the chunks, empty if there are no rows, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or if the fragment does not contain a VALUES tag
+   * @throws RuntimeException if a problem occurs
+   */
+  public List<SqlChunk> getChunkedSql(String name, SqlParameterSource paramSource) {
+    return SqlRenderContext.renderWithoutArrays(
+        () -> _fragments.getChunkedSql(name, new SpringSqlParams(paramSource)));
   }
 
 }
@@ -5,6 +5,17 @@
  */
 package com.opengamma.elsql;
 
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Configuration that provides support for differences between databases.
  * <p>
@@ -22,33 +33,70 @@ public class ElSqlConfig {
   /**
    * A constant for the config needed for Postgres, the same as {@code DEFAULT}.
    */
-  public static final ElSqlConfig POSTGRES = new PostgresElSqlConfig();
+  public static final ElSqlConfig POSTGRES = new PostgresElSqlConfig(false, false);
   /**
    * A constant for the config needed for HSQL, which escapes the LIKE clause.
    */
-  public static final ElSqlConfig HSQL = new HsqlElSqlConfig();
+  public static final ElSqlConfig HSQL = new HsqlElSqlConfig(false, false);
   /**
    * A constant for the config needed for MySQL, which uses LIMIT-OFFSET instead
    * of FETCH-OFFSET.
    */
-  public static final ElSqlConfig MYSQL = new MySqlElSqlConfig();
+  public static final ElSqlConfig MYSQL = new MySqlElSqlConfig(false, false);
   /**
    * A constant for the config needed for Oracle RDBMS.
    */
-  public static final ElSqlConfig ORACLE = new OracleElSqlConfig();
+  public static final ElSqlConfig ORACLE = new OracleElSqlConfig(false, false);
   /**
    * A constant for the config needed for SQL Server 2008, which pages in a different way.
    */
-  public static final ElSqlConfig SQL_SERVER_2008 = new SqlServer2008ElSqlConfig();
+  public static final ElSqlConfig SQL_SERVER_2008 = new SqlServer2008ElSqlConfig(false, false);
   /**
    * A constant for the config needed for Vertica, the same as {@code DEFAULT}.
    */
-  public static final ElSqlConfig VERTICA = new VerticaElSqlConfig();
+  public static final ElSqlConfig VERTICA = new VerticaElSqlConfig(false, false);
+
+  /**
+   * The maximum number of paging clauses to cache.
+   */
+  private static final int PAGING_CACHE_SIZE = 1024;
+  /**
+   * The SQL types of temporary table keys, keyed by Java type.
+   */
+  private static final Map<Class<?>, String> KEY_TYPES = new HashMap<Class<?>, String>();
+  static {
+    KEY_TYPES.put(Short.class, "smallint");
+    KEY_TYPES.put(Integer.class, "integer");
+    KEY_TYPES.put(Long.class, "bigint");
+    KEY_TYPES.put(BigDecimal.class, "numeric");
+    KEY_TYPES.put(Float.class, "double precision");
+    KEY_TYPES.put(Double.class, "double precision");
+    KEY_TYPES.put(Boolean.class, "boolean");
+    KEY_TYPES.put(Date.class, "date");
+    KEY_TYPES.put(Timestamp.class, "timestamp");
+    KEY_TYPES.put(UUID.class, "uuid");
+  }
 
   /**
    * The descriptive name.
    */
   private final String _name;
+  /**
+   * Whether paging is output using bind variables.
+   */
+  private final boolean _bindPaging;
+  /**
+   * Whether named blocks are rendered using compiled renderers.
+   */
+  private final boolean _compiledRendering;
+  /**
+   * Whether {@link #addPaging(String, int, int)} has been overridden.
+   */
+  private final boolean _addPagingOverridden;
+  /**
+   * The cache of paging clauses, keyed by offset and fetch limit.
+   */
+  private final ConcurrentMap<Long, String> _pagingCache = new ConcurrentHashMap<Long, String>();
 
   /**
    * Creates an instance.
@@ -56,7 +104,40 @@ public class ElSqlConfig {
    * @param name  a descriptive name for the config, not null
    */
   public ElSqlConfig(String name) {
+    this(name, false);
+  }
+
+  /**
+   * Creates an instance, specifying whether to use bind variables for paging.
+   * 
+   * @param name  a descriptive name for the config, not null
+   * @param bindPaging  whether paging is output using bind variables
+   */
+  public ElSqlConfig(String name, boolean bindPaging) {
+    this(name, bindPaging, false);
+  }
+
+  /**
+   * Creates an instance, specifying whether to use bind variables for paging and compiled rendering.
+   * 
+   * @param name  a descriptive name for the config, not null
+   * @param bindPaging  whether paging is output using bind variables
+   * @param compiledRendering  whether named blocks are rendered using compiled renderers
+   */
+  public ElSqlConfig(String name, boolean bindPaging, boolean compiledRendering) {
     _name = name;
+    _bindPaging = bindPaging;
+    _compiledRendering = compiledRendering;
+    _addPagingOverridden = isOverridden("addPaging", String.class, int.class, int.class);
+  }
+
+  // checks if a public method is overridden by a subclass
+  private boolean isOverridden(String methodName, Class<?>... parameterTypes) {
+    try {
+      return getClass().getMethod(methodName, parameterTypes).getDeclaringClass() != ElSqlConfig.class;
+    } catch (NoSuchMethodException ex) {
+      throw new IllegalStateException(ex);
+    }
   }
 
   /**
@@ -68,6 +149,48 @@ public class ElSqlConfig {
     return _name;
   }
 
+  /**
+   * Checks whether paging is output using bind variables.
+   * <p>
+   * By default, the paging tags output the offset and fetch amounts as literal numbers.
+   * When this is true, the variables referred to by the tag are output instead,
+   * such as 'OFFSET :paging_offset ROWS FETCH NEXT :paging_fetch ROWS ONLY'.
+   * The values are then bound as normal SQL parameters, so that each page of
+   * a query uses the same SQL, which is friendly to statement caches.
+   * <p>
+   * The default implementation returns the flag passed to the constructor.
+   * Subclasses may override this method to always use bind variables.
+   * 
+   * @return true if paging is output using bind variables
+   */
+  public boolean isBindPaging() {
+    return _bindPaging;
+  }
+
+  /**
+   * Returns a copy of this config that outputs paging using bind variables.
+   * <p>
+   * See {@link #isBindPaging()}.
+   * The config name is unaltered, so the same resources are loaded.
+   * <p>
+   * Subclasses must override this method to return an instance of the subclass,
+   * typically using the {@link #ElSqlConfig(String, boolean, boolean)} constructor,
+   * as the default implementation can only copy this class.
+   * 
+   * @param bindPaging  whether paging is output using bind variables
+   * @return a config with the bind paging flag updated, not null
+   * @throws UnsupportedOperationException if a subclass does not override this method
+   */
+  public ElSqlConfig withBindPaging(boolean bindPaging) {
+    if (bindPaging == isBindPaging()) {
+      return this;
+    }
+    if (getClass() != ElSqlConfig.class) {
+      throw new UnsupportedOperationException("Config subclass must override withBindPaging(): " + getClass().getName());
+    }
+    return new ElSqlConfig(_name, bindPaging, isCompiledRendering());
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Checks if the value contains a wildcard.
@@ -110,6 +233,116 @@ public class ElSqlConfig {
   }
 
   //-------------------------------------------------------------------------
+  /**
+   * Alters the SQL at the end of the buffer to add paging, such as OFFSET-FETCH.
+   * <p>
+   * This is the method used by the PAGING tag.
+   * The SELECT statement to page starts at the specified index and continues to
+   * the end of the buffer, and is updated in place.
+   * <p>
+   * The default implementation appends the result of {@link #getPaging(int, int)},
+   * caching the paging clause of commonly used values.
+   * If {@link #addPaging(String, int, int)} has been overridden by a subclass,
+   * the SELECT is instead replaced by the result of that method.
+   * 
+   * @param buf  the buffer containing the SELECT to page, not null
+   * @param selectStart  the index in the buffer that the SELECT starts at
+   * @param offset  the OFFSET amount, zero to start from the beginning
+   * @param fetchLimit  the FETCH/LIMIT amount, zero to fetch all
+   */
+  public void appendPaging(StringBuilder buf, int selectStart, int offset, int fetchLimit) {
+    if (_addPagingOverridden) {
+      String select = buf.substring(selectStart);
+      buf.setLength(selectStart);
+      buf.append(addPaging(select, offset, fetchLimit));
+      return;
+    }
+    if (buf.length() > selectStart && buf.charAt(buf.length() - 1) != ' ') {
+      buf.append(' ');
+    }
+    buf.append(getPagingCached(offset, fetchLimit));
+  }
+
+  /**
+   * Gets the paging SQL, such as OFFSET-FETCH, caching commonly used values.
+   * <p>
+   * This is the method used by the OFFSETFETCH and FETCH tags.
+   * The result of {@link #getPaging(int, int)} is cached, up to a fixed number of entries.
+   * 
+   * @param offset  the OFFSET amount, zero to start from the beginning
+   * @param fetchLimit  the FETCH/LIMIT amount, zero to fetch all
+   * @return the SQL to use, not null
+   */
+  public final String getPagingCached(int offset, int fetchLimit) {
+    Long key = Long.valueOf(((long) offset << 32) | (fetchLimit & 0xFFFFFFFFL));
+    String paging = _pagingCache.get(key);
+    if (paging == null) {
+      paging = getPaging(offset, fetchLimit);
+      if (_pagingCache.size() < PAGING_CACHE_SIZE) {
+        _pagingCache.putIfAbsent(key, paging);
+      }
+    }
+    return paging;
+  }
+
+  /**
+   * Alters the SQL at the end of the buffer to add paging using bind variables.
+   * <p>
+   * This is the method used by the PAGING tag when {@link #isBindPaging()} is true.
+   * The SELECT statement to page starts at the specified index and continues to
+   * the end of the buffer, and is updated in place.
+   * The offset and fetch amounts are only used to determine the shape of the SQL,
+   * such as whether to output the OFFSET clause.
+   * <p>
+   * The default implementation appends the result of {@link #getBindPaging(int, int, String, String)}.
+   * 
+   * @param buf  the buffer containing the SELECT to page, not null
+   * @param selectStart  the index in the buffer that the SELECT starts at
+   * @param offset  the OFFSET amount, zero to start from the beginning
+   * @param fetchLimit  the FETCH/LIMIT amount, zero to fetch all
+   * @param offsetVariable  the offset variable (starting with a colon) or numeric literal, not null
+   * @param fetchVariable  the fetch variable (starting with a colon) or numeric literal, not null
+   */
+  public void appendBindPaging(
+      StringBuilder buf, int selectStart, int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+    if (buf.length() > selectStart && buf.charAt(buf.length() - 1) != ' ') {
+      buf.append(' ');
+    }
+    buf.append(getBindPaging(offset, fetchLimit, offsetVariable, fetchVariable));
+  }
+
+  /**
+   * Gets the paging SQL using bind variables, such as OFFSET-FETCH.
+   * <p>
+   * This is the method used by the OFFSETFETCH and FETCH tags when {@link #isBindPaging()} is true.
+   * The offset and fetch amounts are only used to determine the shape of the SQL,
+   * such as whether to output the OFFSET clause.
+   * <p>
+   * The default implementation uses 'FETCH FIRST :fetch ROWS ONLY' or
+   * 'OFFSET :offset ROWS FETCH NEXT :fetch ROWS ONLY'.
+   * This matches Postgres, HSQL and other databases.
+   * <p>
+   * The returned SQL must be end in a space if non-empty.
+   * 
+   * @param offset  the OFFSET amount, zero to start from the beginning
+   * @param fetchLimit  the FETCH/LIMIT amount, zero to fetch all
+   * @param offsetVariable  the offset variable (starting with a colon) or numeric literal, not null
+   * @param fetchVariable  the fetch variable (starting with a colon) or numeric literal, not null
+   * @return the SQL to use, not null
+   */
+  public String getBindPaging(int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+    if (fetchLimit == 0 && offset == 0) {
+      return "";
+    }
+    if (fetchLimit == 0) {
+      return "OFFSET " + offsetVariable + " ROWS ";
+    }
+    if (offset == 0) {
+      return "FETCH FIRST " + fetchVariable + " ROWS ONLY ";
+    }
+    return "OFFSET " + offsetVariable + " ROWS FETCH NEXT " + fetchVariable + " ROWS ONLY ";
+  }
+
   /**
    * Alters the supplied SQL to add paging, such as OFFSET-FETCH.
    * <p>
@@ -134,6 +367,7 @@ public class ElSqlConfig {
    * This matches Postgres, HSQL and other databases.
    * <p>
    * The returned SQL must be end in a space if non-empty.
+   * The result may be cached, thus it must only depend on the input values.
    * 
    * @param offset  the OFFSET amount, zero to start from the beginning
    * @param fetchLimit  the FETCH/LIMIT amount, zero to fetch all
@@ -152,10 +386,421 @@ public class ElSqlConfig {
     return "OFFSET " + offset + " ROWS FETCH NEXT " + fetchLimit + " ROWS ONLY ";
   }
 
+  /**
+   * Gets the keyset paging SQL, selecting the rows that sort after the last seen key.
+   * <p>
+   * Keyset paging, also known as seek paging, avoids the cost of an OFFSET.
+   * The default implementation uses a row value comparison, such as '(a, b) &gt; (:a, :b)',
+   * when all the columns sort in the same direction.
+   * This matches Postgres, HSQL, MySQL and other databases.
+   * Otherwise, the comparison is expanded using {@link #getKeysetExpanded(List, List, List)}.
+   * <p>
+   * The returned SQL must be end in a space if non-empty.
+   * 
+   * @param columns  the key columns in sort order, not empty
+   * @param variables  the variables (starting with a colon) of the last seen key values, same size as columns
+   * @param descending  whether each column sorts descending, same size as columns
+   * @return the SQL to use, not null
+   */
+  public String getKeyset(List<String> columns, List<String> variables, List<Boolean> descending) {
+    boolean desc = descending.get(0);
+    for (Boolean columnDesc : descending) {
+      if (columnDesc.booleanValue() != desc) {
+        return getKeysetExpanded(columns, variables, descending);
+      }
+    }
+    String operator = (desc ? " < " : " > ");
+    if (columns.size() == 1) {
+      return columns.get(0) + operator + variables.get(0) + " ";
+    }
+    StringBuilder buf = new StringBuilder(64);
+    buf.append('(');
+    for (int i = 0; i < columns.size(); i++) {
+      buf.append(i > 0 ? ", " : "").append(columns.get(i));
+    }
+    buf.append(')').append(operator).append('(');
+    for (int i = 0; i < variables.size(); i++) {
+      buf.append(i > 0 ? ", " : "").append(variables.get(i));
+    }
+    return buf.append(") ").toString();
+  }
+
+  /**
+   * Gets the keyset paging SQL using AND/OR rather than a row value comparison.
+   * <p>
+   * This outputs SQL such as '(a &gt; :a OR (a = :a AND b &gt; :b))'.
+   * It is used for databases that do not support row value comparison
+   * and where the columns do not sort in the same direction.
+   * <p>
+   * The returned SQL must be end in a space if non-empty.
+   * 
+   * @param columns  the key columns in sort order, not empty
+   * @param variables  the variables (starting with a colon) of the last seen key values, same size as columns
+   * @param descending  whether each column sorts descending, same size as columns
+   * @return the SQL to use, not null
+   */
+  protected String getKeysetExpanded(List<String> columns, List<String> variables, List<Boolean> descending) {
+    StringBuilder buf = new StringBuilder(128);
+    buf.append('(');
+    for (int i = 0; i < columns.size(); i++) {
+      if (i > 0) {
+        buf.append(" OR (");
+        for (int j = 0; j < i; j++) {
+          buf.append(columns.get(j)).append(" = ").append(variables.get(j)).append(" AND ");
+        }
+      }
+      buf.append(columns.get(i)).append(descending.get(i) ? " < " : " > ").append(variables.get(i));
+    }
+    for (int i = 0; i < columns.size(); i++) {
+      buf.append(')');
+    }
+    return buf.append(' ').toString();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Alters the supplied SQL to count the rows it would return.
+   * <p>
+   * This is used to derive the count of rows from the SELECT in a PAGING tag.
+   * The default implementation removes any final ORDER BY clause, which cannot
+   * affect the count, and wraps the SELECT in 'SELECT COUNT(*) FROM ( ... ) count_'.
+   * The ORDER BY clause is retained if it is followed by anything other than
+   * the ordering, such as a LIMIT or FETCH clause.
+   * <p>
+   * The returned SQL must be end in a space if non-empty.
+   * 
+   * @param selectToCount  the SELECT statement to count, not null
+   * @return the counting SELECT, not null
+   */
+  public String addCount(String selectToCount) {
+    String select = removeOrderBy(selectToCount);
+    return "SELECT COUNT(*) FROM ( " + select + (select.endsWith(" ") ? "" : " ") + ") count_ ";
+  }
+
+  /**
+   * Removes a final ORDER BY clause from the SQL.
+   * <p>
+   * The ORDER BY must be outside parentheses and quotes to be matched.
+   * The SQL is returned unaltered if the ORDER BY is followed by an
+   * OFFSET, FETCH or LIMIT clause.
+   * 
+   * @param select  the SELECT statement, not null
+   * @return the SELECT without the ORDER BY, not null
+   */
+  protected String removeOrderBy(String select) {
+    int orderBy = -1;
+    int depth = 0;
+    char quote = 0;
+    for (int i = 0; i < select.length(); i++) {
+      char ch = select.charAt(i);
+      if (quote != 0) {
+        if (ch == quote) {
+          quote = 0;
+        }
+      } else if (ch == '\'' || ch == '"') {
+        quote = ch;
+      } else if (ch == '(') {
+        depth++;
+      } else if (ch == ')') {
+        depth--;
+      } else if (depth == 0 && ch == ' ' && select.regionMatches(true, i, " ORDER BY ", 0, 10)) {
+        orderBy = i;
+      }
+    }
+    if (orderBy < 0) {
+      return select;
+    }
+    String ordering = select.substring(orderBy + 10).toUpperCase(Locale.ENGLISH);
+    if (ordering.contains(" OFFSET ") || ordering.contains(" FETCH ") || ordering.contains(" LIMIT ")) {
+      return select;
+    }
+    return select.substring(0, orderBy + 1);
+  }
+
+  /**
+   * Gets the SQL for a set-membership test against a list variable.
+   * <p>
+   * This is used by the IN tag, which follows the column, such as 'id @IN(:ids)'.
+   * The default implementation outputs an IN list with a variable for each element,
+   * such as 'IN (:ids0, :ids1, :ids2, :ids2) ', where the variables resolve to the elements of the list.
+   * The number of variables is rounded up using {@link #getInBucketSize(int)}, repeating the last
+   * element, so that lists of similar size share the same SQL.
+   * An empty list outputs 'IN (NULL) ', which matches no rows.
+   * A list larger than {@link #getInThreshold()} uses {@link #getInLarge(String, int)} instead,
+   * unless the keys are placed in a temporary table, see {@link #getInTempTable(String, String)}.
+   * <p>
+   * The returned SQL must be end in a space if non-empty.
+   * 
+   * @param variable  the list variable name (without the colon), not null
+   * @param size  the size of the list, zero or greater
+   * @return the SQL to use, not null
+   */
+  public String getIn(String variable, int size) {
+    if (size == 0) {
+      return "IN (NULL) ";
+    }
+    if (size > getInThreshold()) {
+      return getInLarge(variable, size);
+    }
+    int bucket = Math.max(getInBucketSize(size), size);
+    StringBuilder buf = new StringBuilder(16 + bucket * (variable.length() + 6));
+    buf.append("IN (");
+    for (int i = 0; i < bucket; i++) {
+      buf.append(i > 0 ? ", :" : ":").append(variable).append(Math.min(i, size - 1));
+    }
+    return buf.append(") ").toString();
+  }
+
+  /**
+   * Gets the number of variables to output in an IN list for a list of the specified size.
+   * <p>
+   * Rounding up the size reduces the number of distinct statements, improving the
+   * hit rate of statement caches.
+   * The default implementation rounds up to the next power of two.
+   * 
+   * @param size  the size of the list, one or greater
+   * @return the number of variables to output, not less than the size
+   */
+  public int getInBucketSize(int size) {
+    int bucket = Integer.highestOneBit(size);
+    return (bucket == size || bucket >= (1 << 30) ? size : bucket << 1);
+  }
+
+  /**
+   * Gets the list size above which the IN tag uses {@link #getInLarge(String, int)}.
+   * <p>
+   * An IN list with thousands of variables produces large SQL that is slow to transmit, parse and plan.
+   * The default implementation returns {@code Integer.MAX_VALUE}, as the database is unknown.
+   * 
+   * @return the threshold, zero or greater
+   */
+  public int getInThreshold() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Gets the SQL for a set-membership test against a large list variable.
+   * <p>
+   * This is used by the IN tag when the size exceeds {@link #getInThreshold()},
+   * unless {@link #getInTempTable(String, String)} returns a table.
+   * The default implementation outputs 'IN (SELECT * FROM UNNEST(:ids)) ',
+   * binding the list as a single SQL array.
+   * <p>
+   * The returned SQL must be end in a space if non-empty.
+   * 
+   * @param variable  the list variable name (without the colon), not null
+   * @param size  the size of the list, greater than the threshold
+   * @return the SQL to use, not null
+   */
+  public String getInLarge(String variable, int size) {
+    return "IN (SELECT * FROM UNNEST(:" + variable + ")) ";
+  }
+
+  /**
+   * Gets the name of the temporary table holding the keys of a large list variable.
+   * <p>
+   * This is used for databases that cannot bind an array, when the size exceeds {@link #getInThreshold()}.
+   * If a table is returned, the IN tag outputs 'IN (SELECT elsql_key FROM table) ', and the
+   * table is filled by {@link ElSqlJdbc} before the statement is executed.
+   * The table has a single column, 'elsql_key', and is session-scoped, created if necessary
+   * using {@link #getInTempTableCreate(String, String)}.
+   * As an existing table is reused, the name must differ for each key type.
+   * The default implementation returns null, indicating that no temporary table is used.
+   * 
+   * @param variable  the list variable name (without the colon), not null
+   * @param keyType  the SQL type of the keys, such as 'bigint', not null
+   * @return the table name, null if not using a temporary table
+   */
+  public String getInTempTable(String variable, String keyType) {
+    return null;
+  }
+
+  /**
+   * Gets the SQL to create the temporary table holding the keys of a large list, if it does not exist.
+   * <p>
+   * The default implementation uses the SQL standard 'DECLARE LOCAL TEMPORARY TABLE'.
+   * 
+   * @param table  the table name, from {@link #getInTempTable(String, String)}, not null
+   * @param keyType  the SQL type of the keys, not null
+   * @return the SQL to use, not null
+   */
+  public String getInTempTableCreate(String table, String keyType) {
+    return "DECLARE LOCAL TEMPORARY TABLE " + table + " (elsql_key " + keyType + ")";
+  }
+
+  /**
+   * Gets the SQL type of the key column of the temporary table holding a large list.
+   * <p>
+   * The type is passed to {@link #getInTempTable(String, String)} and {@link #getInTempTableCreate(String, String)}.
+   * The default implementation infers the type from the first non-null key, such as 'bigint' for a {@code Long},
+   * using 'varchar(4000)' for strings and other unknown types.
+   * 
+   * @param values  the keys, not null
+   * @return the SQL type, not null
+   */
+  public String getInTempTableKeyType(Object[] values) {
+    for (Object value : values) {
+      if (value != null) {
+        String type = KEY_TYPES.get(value.getClass());
+        return (type != null ? type : "varchar(4000)");
+      }
+    }
+    return "varchar(4000)";
+  }
+
+  // the temporary table name for a variable, which may contain dots, and a key type, such as 'varchar(4000)'
+  static String inTempTableName(String prefix, String variable, String keyType) {
+    String type = keyType.replaceAll("[^A-Za-z0-9]+", "_");
+    type = (type.endsWith("_") ? type.substring(0, type.length() - 1) : type);
+    return prefix + "elsql_in_" + variable.replaceAll("[^A-Za-z0-9_]", "_") + "_" + type;
+  }
+
+  /**
+   * Gets the maximum number of bind parameters permitted in a single statement.
+   * <p>
+   * This is used to size the chunks of rows output by a VALUES tag.
+   * The default implementation returns 32767.
+   * 
+   * @return the maximum number of bind parameters, one or greater
+   */
+  public int getMaxBindParameters() {
+    return 32767;
+  }
+
+  /**
+   * Gets the maximum number of rows to output in a single VALUES clause.
+   * <p>
+   * This is used to size the chunks of rows output by a VALUES tag.
+   * Each chunk is further limited by {@link #getMaxBindParameters()}.
+   * The default implementation returns 1000.
+   * 
+   * @return the maximum number of rows, one or greater
+   */
+  public int getMaxValuesRows() {
+    return 1000;
+  }
+
+  /**
+   * Checks whether literal SQL text is canonicalized when parsed.
+   * <p>
+   * When enabled, whitespace outside quoted text is collapsed and normalized around brackets
+   * and commas, and common reserved keywords are output in upper case.
+   * Thus, blocks that differ only in layout render identical SQL, improving the hit rate
+   * of statement caches in JDBC drivers.
+   * <p>
+   * This is applied when the resources are parsed, thus changing the config of a parsed bundle
+   * using {@link ElSql#withConfig(ElSqlConfig)} has no effect.
+   * The default implementation returns false.
+   * 
+   * @return true if literal text is canonicalized
+   */
+  public boolean isCanonicalText() {
+    return false;
+  }
+
+  /**
+   * Checks whether named blocks are rendered using compiled renderers.
+   * <p>
+   * When enabled, each named block is compiled on first use to a tree of closures,
+   * where literal text, including the text of statically included blocks, is merged into constants
+   * and conditional tags are direct tests of the variable. Static includes are resolved to direct references
+   * to the compiled form of the included block. This reduces the work done on each render
+   * of frequently used blocks, at the cost of the memory holding the compiled form.
+   * The SQL output is the same as when the fragments are interpreted.
+   * <p>
+   * The default implementation returns the flag passed to the constructor.
+   * 
+   * @return true if rendering uses compiled renderers
+   */
+  public boolean isCompiledRendering() {
+    return _compiledRendering;
+  }
+
+  /**
+   * Returns a copy of this config that renders named blocks using compiled renderers.
+   * <p>
+   * See {@link #isCompiledRendering()}.
+   * The config name is unaltered, so the same resources are loaded.
+   * <p>
+   * Subclasses must override this method to return an instance of the subclass,
+   * typically using the {@link #ElSqlConfig(String, boolean, boolean)} constructor,
+   * as the default implementation can only copy this class.
+   * 
+   * @param compiledRendering  whether named blocks are rendered using compiled renderers
+   * @return a config with the compiled rendering flag updated, not null
+   * @throws UnsupportedOperationException if a subclass does not override this method
+   */
+  public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+    if (compiledRendering == isCompiledRendering()) {
+      return this;
+    }
+    if (getClass() != ElSqlConfig.class) {
+      throw new UnsupportedOperationException(
+          "Config subclass must override withCompiledRendering(): " + getClass().getName());
+    }
+    return new ElSqlConfig(_name, isBindPaging(), compiledRendering);
+  }
+
+  /**
+   * Gets the maximum depth of nested includes of a variable.
+   * <p>
+   * An include of a variable, such as {@code @INCLUDE(:var)}, can form a cycle
+   * that is only known when rendering. Exceeding this depth fails with an exception
+   * rather than overflowing the stack.
+   * Includes of a literal name are checked for cycles when the bundle is built,
+   * so they do not count toward the depth.
+   * The default implementation returns 64.
+   * 
+   * @return the maximum depth, one or greater
+   */
+  public int getMaxIncludeDepth() {
+    return 64;
+  }
+
+  /**
+   * Gets the positional bind marker for a variable.
+   * <p>
+   * This is used when converting named variables to positional markers, such as
+   * for R2DBC drivers, which use database specific markers.
+   * The default implementation returns '?'.
+   * 
+   * @param index  the zero-based index of the marker within the statement
+   * @return the bind marker, not null
+   */
+  public String getBindMarker(int index) {
+    return "?";
+  }
+
+  /**
+   * Gets the JDBC fetch size to use when streaming the results of a query.
+   * <p>
+   * This is passed to {@link java.sql.Statement#setFetchSize(int)} so that the driver
+   * retrieves rows in batches rather than reading the whole result into memory.
+   * The default implementation returns 1000.
+   * 
+   * @return the fetch size
+   */
+  public int getStreamingFetchSize() {
+    return 1000;
+  }
+
+  /**
+   * Checks if auto-commit must be disabled when streaming the results of a query.
+   * <p>
+   * Some drivers only use a database cursor to stream results within a transaction.
+   * The default implementation returns false.
+   * 
+   * @return true if auto-commit must be disabled
+   */
+  public boolean isStreamingAutoCommitDisabled() {
+    return false;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public String toString() {
-    return "ElSqlConfig[" + _name + "]";
+    return "ElSqlConfig[" + _name + (isBindPaging() ? ",bindPaging" : "") +
+        (isCompiledRendering() ? ",compiledRendering" : "") + "]";
   }
 
   //-------------------------------------------------------------------------
@@ -163,8 +808,30 @@ public class ElSqlConfig {
    * Class for Postgres.
    */
   private static class PostgresElSqlConfig extends ElSqlConfig {
-    public PostgresElSqlConfig() {
-      super("Postgres");
+    public PostgresElSqlConfig(boolean bindPaging, boolean compiledRendering) {
+      super("Postgres", bindPaging, compiledRendering);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new PostgresElSqlConfig(bindPaging, isCompiledRendering()));
+    }
+    @Override
+    public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+      return (compiledRendering == isCompiledRendering() ? this : new PostgresElSqlConfig(isBindPaging(), compiledRendering));
+    }
+    @Override
+    public String getBindMarker(int index) {
+      return "$" + (index + 1);
+    }
+    @Override
+    public boolean isStreamingAutoCommitDisabled() {
+      // the driver ignores the fetch size in auto-commit mode
+      return true;
+    }
+    @Override
+    public String getIn(String variable, int size) {
+      // binding an array gives the same SQL for all sizes, the empty case avoids inferring the array type
+      return (size == 0 ? super.getIn(variable, size) : "= ANY(:" + variable + ") ");
     }
   }
 
@@ -173,8 +840,24 @@ public class ElSqlConfig {
    * Class for HSQL.
    */
   private static class HsqlElSqlConfig extends ElSqlConfig {
-    public HsqlElSqlConfig() {
-      super("HSQL");
+    public HsqlElSqlConfig(boolean bindPaging, boolean compiledRendering) {
+      super("HSQL", bindPaging, compiledRendering);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new HsqlElSqlConfig(bindPaging, isCompiledRendering()));
+    }
+    @Override
+    public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+      return (compiledRendering == isCompiledRendering() ? this : new HsqlElSqlConfig(isBindPaging(), compiledRendering));
+    }
+    @Override
+    public int getInThreshold() {
+      return 1000;
+    }
+    @Override
+    public String getInLarge(String variable, int size) {
+      return "IN (UNNEST(:" + variable + ")) ";
     }
     @Override
     public String getLikeSuffix() {
@@ -187,8 +870,37 @@ public class ElSqlConfig {
    * Class for MySQL.
    */
   private static class MySqlElSqlConfig extends ElSqlConfig {
-    public MySqlElSqlConfig() {
-      super("MySql");
+    public MySqlElSqlConfig(boolean bindPaging, boolean compiledRendering) {
+      super("MySql", bindPaging, compiledRendering);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new MySqlElSqlConfig(bindPaging, isCompiledRendering()));
+    }
+    @Override
+    public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+      return (compiledRendering == isCompiledRendering() ? this : new MySqlElSqlConfig(isBindPaging(), compiledRendering));
+    }
+    @Override
+    public int getInThreshold() {
+      return 1000;
+    }
+    @Override
+    public String getInTempTable(String variable, String keyType) {
+      return inTempTableName("", variable, keyType);
+    }
+    @Override
+    public String getInTempTableCreate(String table, String keyType) {
+      return "CREATE TEMPORARY TABLE IF NOT EXISTS " + table + " (elsql_key " + keyType + ")";
+    }
+    @Override
+    public int getMaxBindParameters() {
+      return 65535;
+    }
+    @Override
+    public int getStreamingFetchSize() {
+      // the driver only streams rows one at a time when the fetch size is MIN_VALUE
+      return Integer.MIN_VALUE;
     }
     @Override
     public String getPaging(int offset, int fetchLimit) {
@@ -203,6 +915,19 @@ public class ElSqlConfig {
       }
       return "LIMIT " + fetchLimit + " OFFSET " + offset + " ";
     }
+    @Override
+    public String getBindPaging(int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+      if (fetchLimit == 0 && offset == 0) {
+        return "";
+      }
+      if (fetchLimit == 0) {
+        return "OFFSET " + offsetVariable + " ";
+      }
+      if (offset == 0) {
+        return "LIMIT " + fetchVariable + " ";
+      }
+      return "LIMIT " + fetchVariable + " OFFSET " + offsetVariable + " ";
+    }
   }
 
   //-------------------------------------------------------------------------
@@ -212,8 +937,40 @@ public class ElSqlConfig {
    * http://www.oracle-base.com/articles/12c/row-limiting-clause-for-top-n-queries-12cr1.php
    */
   private static class OracleElSqlConfig extends ElSqlConfig {
-    public OracleElSqlConfig() {
-      super("Oracle");
+    public OracleElSqlConfig(boolean bindPaging, boolean compiledRendering) {
+      super("Oracle", bindPaging, compiledRendering);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new OracleElSqlConfig(bindPaging, isCompiledRendering()));
+    }
+    @Override
+    public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+      return (compiledRendering == isCompiledRendering() ? this : new OracleElSqlConfig(isBindPaging(), compiledRendering));
+    }
+    @Override
+    public int getInBucketSize(int size) {
+      // an IN list is limited to 1000 expressions, so padding must not exceed it
+      return (size <= 1000 ? Math.min(super.getInBucketSize(size), 1000) : size);
+    }
+    @Override
+    public int getInThreshold() {
+      // larger lists would fail with ORA-01795
+      return 1000;
+    }
+    @Override
+    public String getInTempTable(String variable, String keyType) {
+      return inTempTableName("", variable, keyType);
+    }
+    @Override
+    public String getInTempTableCreate(String table, String keyType) {
+      // a global temporary table is permanent, with session-private rows, and the DDL commits,
+      // so it is only created if it does not exist
+      String type = ("bigint".equals(keyType) ? "number(19)" : "boolean".equals(keyType) ? "number(1)" :
+          "uuid".equals(keyType) ? "varchar(36)" : keyType);
+      return "DECLARE n NUMBER; BEGIN SELECT COUNT(*) INTO n FROM user_tables WHERE table_name = '" +
+          table.toUpperCase(Locale.ENGLISH) + "'; IF n = 0 THEN EXECUTE IMMEDIATE 'CREATE GLOBAL TEMPORARY TABLE " +
+          table + " (elsql_key " + type + ") ON COMMIT PRESERVE ROWS'; END IF; END;";
     }
     @Override
 		public String addPaging(String selectToPage, int offset, int fetchLimit) {
@@ -229,9 +986,52 @@ public class ElSqlConfig {
           " ) row_ where rownum <= "+ end +")  WHERE rownum_  > " + start;
     }
     @Override
+    public void appendPaging(StringBuilder buf, int selectStart, int offset, int fetchLimit) {
+      if (fetchLimit == 0 && offset == 0) {
+        return;
+      }
+      if (offset == 0 && fetchLimit > 0) {
+        buf.insert(selectStart, "SELECT * FROM ( ");
+        buf.append(" ) where rownum <= ").append(fetchLimit);
+        return;
+      }
+      int start = offset;
+      int end = offset + fetchLimit;
+      buf.insert(selectStart, "SELECT * FROM (SELECT  row_.*,rownum rownum_ FROM ( ");
+      buf.append(" ) row_ where rownum <= ").append(end).append(")  WHERE rownum_  > ").append(start);
+    }
+    @Override
+    public void appendBindPaging(
+        StringBuilder buf, int selectStart, int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+      if (fetchLimit == 0 && offset == 0) {
+        return;
+      }
+      if (offset == 0) {
+        buf.insert(selectStart, "SELECT * FROM ( ");
+        buf.append(" ) where rownum <= ").append(fetchVariable);
+        return;
+      }
+      if (fetchLimit == 0) {
+        buf.insert(selectStart, "SELECT * FROM (SELECT  row_.*,rownum rownum_ FROM ( ");
+        buf.append(" ) row_)  WHERE rownum_  > ").append(offsetVariable);
+        return;
+      }
+      buf.insert(selectStart, "SELECT * FROM (SELECT  row_.*,rownum rownum_ FROM ( ");
+      buf.append(" ) row_ where rownum <= ").append(offsetVariable).append(" + ").append(fetchVariable)
+          .append(")  WHERE rownum_  > ").append(offsetVariable);
+    }
+    @Override
+    public String getBindPaging(int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+      throw new UnsupportedOperationException();
+    }
+    @Override
     public String getPaging(int offset, int fetchLimit) {
       throw new UnsupportedOperationException();
     }
+    @Override
+    public String getKeyset(List<String> columns, List<String> variables, List<Boolean> descending) {
+      return getKeysetExpanded(columns, variables, descending);
+    }
   }
 
   //-------------------------------------------------------------------------
@@ -239,8 +1039,28 @@ public class ElSqlConfig {
    * Class for SQL server 2008.
    */
   private static class SqlServer2008ElSqlConfig extends ElSqlConfig {
-    public SqlServer2008ElSqlConfig() {
-      super("SqlServer2008");
+    public SqlServer2008ElSqlConfig(boolean bindPaging, boolean compiledRendering) {
+      super("SqlServer2008", bindPaging, compiledRendering);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new SqlServer2008ElSqlConfig(bindPaging, isCompiledRendering()));
+    }
+    @Override
+    public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+      return (compiledRendering == isCompiledRendering() ? this : new SqlServer2008ElSqlConfig(isBindPaging(), compiledRendering));
+    }
+    @Override
+    public int getInThreshold() {
+      return 1000;
+    }
+    @Override
+    public String getInTempTable(String variable, String keyType) {
+      return inTempTableName("#", variable, keyType);
+    }
+    @Override
+    public String getInTempTableCreate(String table, String keyType) {
+      return "IF OBJECT_ID('tempdb.." + table + "') IS NULL CREATE TABLE " + table + " (elsql_key " + keyType + ")";
     }
     @Override
     public String addPaging(String selectToPage, int offset, int fetchLimit) {
@@ -250,11 +1070,40 @@ public class ElSqlConfig {
       }
       int start = offset + 1;
       int end = offset + fetchLimit;
+      return addRowNumberPaging(selectToPage, "ROW_NUM >= " + start + " AND ROW_NUM <= " + end);
+    }
+    @Override
+    public void appendBindPaging(
+        StringBuilder buf, int selectStart, int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+      String selectToPage = buf.substring(selectStart);
+      buf.setLength(selectStart);
+      if (fetchLimit == 0 && offset == 0) {
+        buf.append(addPaging(selectToPage, 0, 0));
+      } else if (fetchLimit == 0) {
+        buf.append(addRowNumberPaging(selectToPage, "ROW_NUM > " + offsetVariable));
+      } else {
+        buf.append(addRowNumberPaging(selectToPage,
+            "ROW_NUM > " + offsetVariable + " AND ROW_NUM <= " + offsetVariable + " + " + fetchVariable));
+      }
+    }
+    private String addRowNumberPaging(String selectToPage, String rowNumberCondition) {
       String columns = selectToPage.substring(selectToPage.indexOf("SELECT ") + 7, selectToPage.indexOf(" FROM "));
       String from = selectToPage.substring(selectToPage.indexOf(" FROM ") + 6, selectToPage.indexOf(" ORDER BY "));
       String order = selectToPage.substring(selectToPage.indexOf(" ORDER BY ") + 10);
       String inner = "SELECT " + columns + ", ROW_NUMBER() OVER (ORDER BY " + order.trim() + ") AS ROW_NUM FROM " + from;
-      return "SELECT * FROM (" + inner + ") AS ROW_TABLE WHERE ROW_NUM >= " + start + " AND ROW_NUM <= " + end;
+      return "SELECT * FROM (" + inner + ") AS ROW_TABLE WHERE " + rowNumberCondition;
+    }
+    @Override
+    public int getMaxBindParameters() {
+      return 2100;
+    }
+    @Override
+    public String getBindMarker(int index) {
+      return "@p" + (index + 1);
+    }
+    @Override
+    public String getBindPaging(int offset, int fetchLimit, String offsetVariable, String fetchVariable) {
+      throw new UnsupportedOperationException();
     }
     @Override
     public String getLikeSuffix() {
@@ -265,6 +1114,10 @@ public class ElSqlConfig {
       throw new UnsupportedOperationException();
     }
     @Override
+    public String getKeyset(List<String> columns, List<String> variables, List<Boolean> descending) {
+      return getKeysetExpanded(columns, variables, descending);
+    }
+    @Override
     public boolean isLikeWildcard(String value) {
       boolean escape = false;
       for (int i = 0; i < value.length(); i++) {
@@ -288,8 +1141,29 @@ public class ElSqlConfig {
    * Class for Vertica.
    */
   private static class VerticaElSqlConfig extends ElSqlConfig {
-    public VerticaElSqlConfig() {
-      super("Vertica");
+    public VerticaElSqlConfig(boolean bindPaging, boolean compiledRendering) {
+      super("Vertica", bindPaging, compiledRendering);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new VerticaElSqlConfig(bindPaging, isCompiledRendering()));
+    }
+    @Override
+    public ElSqlConfig withCompiledRendering(boolean compiledRendering) {
+      return (compiledRendering == isCompiledRendering() ? this : new VerticaElSqlConfig(isBindPaging(), compiledRendering));
+    }
+    @Override
+    public int getInThreshold() {
+      return 1000;
+    }
+    @Override
+    public String getInTempTable(String variable, String keyType) {
+      return inTempTableName("", variable, keyType);
+    }
+    @Override
+    public String getInTempTableCreate(String table, String keyType) {
+      return "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + table +
+          " (elsql_key " + keyType + ") ON COMMIT PRESERVE ROWS";
     }
   }
 
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+/**
+ * Emits profiling events for parsing and rendering.
+ * <p>
+ * When the Java Flight Recorder API is available, the events are recorded by JFR,
+ * and are only created when enabled in the JFR settings.
+ * Otherwise, this is a no-op.
+ * <p>
+ * The JFR implementation is compiled separately, as it requires the {@code jdk.jfr} API.
+ * It is loaded by reflection, so that this library continues to run without it.
+ */
+class ElSqlEvents {
+
+  /**
+   * The singleton instance.
+   */
+  static final ElSqlEvents INSTANCE = load();
+
+  // loads the JFR implementation if possible
+  private static ElSqlEvents load() {
+    try {
+      Class<?> cls = Class.forName("com.opengamma.elsql.JfrElSqlEvents");
+      return (ElSqlEvents) cls.getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+      return new ElSqlEvents();
+    }
+  }
+
+  /**
+   * Creates an instance.
+   */
+  ElSqlEvents() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Begins an event for parsing a file.
+   * 
+   * @return the event, null if not enabled
+   */
+  Object beginParse() {
+    return null;
+  }
+
+  /**
+   * Commits an event for parsing a file.
+   * 
+   * @param event  the event from {@link #beginParse()}, not null
+   * @param source  the source of the file, not null
+   * @param lines  the number of lines
+   * @param blocks  the number of named blocks
+   */
+  void commitParse(Object event, String source, int lines, int blocks) {
+  }
+
+  /**
+   * Begins an event for rendering a named block.
+   * 
+   * @return the event, null if not enabled
+   */
+  Object beginRender() {
+    return null;
+  }
+
+  /**
+   * Commits an event for rendering a named block.
+   * 
+   * @param event  the event from {@link #beginRender()}, not null
+   * @param name  the name of the block, not null
+   * @param sql  the rendered SQL, not null
+   */
+  void commitRender(Object event, String name, String sql) {
+  }
+
+}
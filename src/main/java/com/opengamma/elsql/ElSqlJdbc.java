@@ -0,0 +1,828 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+/**
+ * Executes elsql formatted SQL using JDBC.
+ * <p>
+ * This class renders SQL from an {@link ElSql} bundle, converts the named variables
+ * to JDBC positional markers, binds the values from the parameters and executes.
+ * Prepared statements are cached, keyed by the rendered SQL, so that the same
+ * shape of SQL is only prepared once for the connection.
+ * The least recently used statement is closed when the cache is full.
+ * <p>
+ * This class has no dependencies on any external libraries.
+ * <p>
+ * This class is mutable and intended for use by a single thread, as per a JDBC {@code Connection}.
+ */
+public final class ElSqlJdbc implements AutoCloseable {
+
+  /**
+   * The default size of the statement cache.
+   */
+  public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+  /**
+   * The default number of rows sent to the database in each batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  /**
+   * The SQL array element types, keyed by Java type.
+   */
+  private static final Map<Class<?>, String> ARRAY_TYPES = new HashMap<Class<?>, String>();
+  static {
+    ARRAY_TYPES.put(Short.class, "smallint");
+    ARRAY_TYPES.put(Integer.class, "integer");
+    ARRAY_TYPES.put(Long.class, "bigint");
+    ARRAY_TYPES.put(BigDecimal.class, "numeric");
+    ARRAY_TYPES.put(Float.class, "float");
+    ARRAY_TYPES.put(Double.class, "float");
+    ARRAY_TYPES.put(Boolean.class, "boolean");
+    ARRAY_TYPES.put(Date.class, "date");
+    ARRAY_TYPES.put(Timestamp.class, "timestamp");
+    ARRAY_TYPES.put(UUID.class, "uuid");
+  }
+
+  /**
+   * The bundle.
+   */
+  private final ElSql _elsql;
+  /**
+   * The connection.
+   */
+  private final Connection _connection;
+  /**
+   * Whether to close the connection when closed.
+   */
+  private final boolean _closeConnection;
+  /**
+   * The statement cache, in least recently used order.
+   */
+  private final LinkedHashMap<String, CachedStatement> _statements;
+  /**
+   * The maximum size of the statement cache.
+   */
+  private final int _statementCacheSize;
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates an instance that executes using a connection.
+   * <p>
+   * The connection is not closed when this instance is closed.
+   * 
+   * @param elsql  the bundle, not null
+   * @param connection  the connection, not null
+   * @return the instance, not null
+   */
+  public static ElSqlJdbc of(ElSql elsql, Connection connection) {
+    return of(elsql, connection, DEFAULT_STATEMENT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates an instance that executes using a connection, specifying the size of the statement cache.
+   * <p>
+   * The connection is not closed when this instance is closed.
+   * 
+   * @param elsql  the bundle, not null
+   * @param connection  the connection, not null
+   * @param statementCacheSize  the maximum number of prepared statements to cache, zero to disable caching
+   * @return the instance, not null
+   */
+  public static ElSqlJdbc of(ElSql elsql, Connection connection, int statementCacheSize) {
+    if (connection == null) {
+      throw new IllegalArgumentException("Connection must not be null");
+    }
+    return new ElSqlJdbc(elsql, connection, false, statementCacheSize);
+  }
+
+  /**
+   * Creates an instance that executes using a connection obtained from a data source.
+   * <p>
+   * A connection is obtained immediately and closed when this instance is closed.
+   * 
+   * @param elsql  the bundle, not null
+   * @param dataSource  the data source, not null
+   * @return the instance, not null
+   * @throws UncheckedSQLException if the connection cannot be obtained
+   */
+  public static ElSqlJdbc of(ElSql elsql, DataSource dataSource) {
+    return of(elsql, dataSource, DEFAULT_STATEMENT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates an instance that executes using a connection obtained from a data source,
+   * specifying the size of the statement cache.
+   * <p>
+   * A connection is obtained immediately and closed when this instance is closed.
+   * 
+   * @param elsql  the bundle, not null
+   * @param dataSource  the data source, not null
+   * @param statementCacheSize  the maximum number of prepared statements to cache, zero to disable caching
+   * @return the instance, not null
+   * @throws UncheckedSQLException if the connection cannot be obtained
+   */
+  public static ElSqlJdbc of(ElSql elsql, DataSource dataSource, int statementCacheSize) {
+    if (dataSource == null) {
+      throw new IllegalArgumentException("DataSource must not be null");
+    }
+    if (elsql == null) {
+      throw new IllegalArgumentException("ElSql must not be null");
+    }
+    if (statementCacheSize < 0) {
+      throw new IllegalArgumentException("Statement cache size must not be negative");
+    }
+    try {
+      return new ElSqlJdbc(elsql, dataSource.getConnection(), true, statementCacheSize);
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to obtain connection", ex);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates an instance.
+   * 
+   * @param elsql  the bundle, not null
+   * @param connection  the connection, not null
+   * @param closeConnection  whether to close the connection when closed
+   * @param statementCacheSize  the maximum number of prepared statements to cache
+   */
+  private ElSqlJdbc(ElSql elsql, Connection connection, boolean closeConnection, int statementCacheSize) {
+    if (elsql == null) {
+      throw new IllegalArgumentException("ElSql must not be null");
+    }
+    if (statementCacheSize < 0) {
+      throw new IllegalArgumentException("Statement cache size must not be negative");
+    }
+    _elsql = elsql;
+    _connection = connection;
+    _closeConnection = closeConnection;
+    _statementCacheSize = statementCacheSize;
+    _statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the bundle.
+   * 
+   * @return the bundle, not null
+   */
+  public ElSql getElSql() {
+    return _elsql;
+  }
+
+  /**
+   * Gets the connection.
+   * 
+   * @return the connection, not null
+   */
+  public Connection getConnection() {
+    return _connection;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Executes a named fragment key as an update, such as INSERT, UPDATE or DELETE.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the number of rows updated
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public int update(String name, SqlParams params) {
+    Map<String, Object[]> inTempTables = new LinkedHashMap<String, Object[]>();
+    String sql = _elsql.getSql(name, params, inTempTables);
+    fillInTempTables(inTempTables);
+    return updateSql(sql, params);
+  }
+
+  /**
+   * Executes a named fragment key as an update, such as INSERT, UPDATE or DELETE.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the number of rows updated
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public int update(String name, Map<String, Object> params) {
+    return update(name, new MapSqlParams(params));
+  }
+
+  /**
+   * Executes a named fragment key as a query, mapping each row.
+   * 
+   * @param <T>  the type of the mapped row
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param rowMapper  the mapper for each row, not null
+   * @return the list of mapped rows, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public <T> List<T> query(String name, SqlParams params, RowMapper<T> rowMapper) {
+    Map<String, Object[]> inTempTables = new LinkedHashMap<String, Object[]>();
+    String sql = _elsql.getSql(name, params, inTempTables);
+    fillInTempTables(inTempTables);
+    return querySql(sql, params, rowMapper);
+  }
+
+  /**
+   * Executes a named fragment key as a query, mapping each row.
+   * 
+   * @param <T>  the type of the mapped row
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param rowMapper  the mapper for each row, not null
+   * @return the list of mapped rows, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public <T> List<T> query(String name, Map<String, Object> params, RowMapper<T> rowMapper) {
+    return query(name, new MapSqlParams(params), rowMapper);
+  }
+
+  /**
+   * Executes a named fragment key as a batch update, one row of parameters at a time.
+   * <p>
+   * The SQL is rendered for each row and must be the same for every row.
+   * The rows are sent to the database using JDBC batching in batches of
+   * {@link #DEFAULT_BATCH_SIZE} rows.
+   * 
+   * @param name  the name, not null
+   * @param rows  the SQL parameters of each row, not null
+   * @return the number of rows updated, one element for each row
+   * @throws IllegalArgumentException if there is no fragment with the specified name,
+   *  a variable in the SQL has no value or the rows render different SQL
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public int[] batchUpdate(String name, List<? extends SqlParams> rows) {
+    return batchUpdate(name, rows, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Executes a named fragment key as a batch update, specifying the batch size.
+   * <p>
+   * The SQL is rendered for each row and must be the same for every row.
+   * This ensures that a conditional tag such as {@code @AND} or {@code @LOOP}
+   * cannot silently change the statement part way through the batch.
+   * The rows are sent to the database using JDBC batching, with a round-trip
+   * for each batch of the specified size.
+   * 
+   * @param name  the name, not null
+   * @param rows  the SQL parameters of each row, not null
+   * @param batchSize  the maximum number of rows to send in each batch, one or greater
+   * @return the number of rows updated, one element for each row
+   * @throws IllegalArgumentException if there is no fragment with the specified name,
+   *  a variable in the SQL has no value or the rows render different SQL
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public int[] batchUpdate(String name, List<? extends SqlParams> rows, int batchSize) {
+    if (rows == null) {
+      throw new IllegalArgumentException("Rows must not be null");
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be one or greater");
+    }
+    if (rows.isEmpty()) {
+      return new int[0];
+    }
+    String sql = _elsql.getSql(name, rows.get(0));
+    for (int i = 1; i < rows.size(); i++) {
+      if (sql.equals(_elsql.getSql(name, rows.get(i))) == false) {
+        throw new IllegalArgumentException(
+            "Batch row " + i + " renders different SQL to row 0 for fragment: " + name);
+      }
+    }
+    return batchUpdateSql(sql, rows, batchSize);
+  }
+
+  /**
+   * Executes a named fragment key containing a VALUES tag as a series of chunked updates.
+   * <p>
+   * The rows of the VALUES tag are split into chunks as per {@link ElSql#getChunkedSql(String, SqlParams)}.
+   * Each chunk is executed as a single multi-row statement.
+   * Full chunks with the same SQL share a cached prepared statement.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the total number of rows updated
+   * @throws IllegalArgumentException if there is no fragment with the specified name,
+   *  the fragment does not contain a VALUES tag or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public int updateChunked(String name, SqlParams params) {
+    int total = 0;
+    for (SqlChunk chunk : _elsql.getChunkedSql(name, params)) {
+      total += updateSql(chunk.getSql(), chunk.getParams());
+    }
+    return total;
+  }
+
+  /**
+   * Executes a named fragment key as a streaming query, passing each row to a callback.
+   * <p>
+   * This is intended for queries returning too many rows to hold in memory.
+   * The statement is forward-only and read-only, with the fetch size and
+   * auto-commit mode controlled by {@link ElSqlConfig#getStreamingFetchSize()}
+   * and {@link ElSqlConfig#isStreamingAutoCommitDisabled()}.
+   * Streaming statements are not cached.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param callback  the callback invoked for each row, not null
+   * @return the number of rows processed
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public long queryStreaming(String name, SqlParams params, RowCallback callback) {
+    if (callback == null) {
+      throw new IllegalArgumentException("RowCallback must not be null");
+    }
+    Map<String, Object[]> inTempTables = new LinkedHashMap<String, Object[]>();
+    String sql = _elsql.getSql(name, params, inTempTables);
+    fillInTempTables(inTempTables);
+    try (StreamingQuery query = new StreamingQuery(sql, params)) {
+      long count = 0;
+      while (query.next()) {
+        callback.processRow(query._resultSet);
+        count++;
+      }
+      return count;
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to execute query: " + sql, ex);
+    }
+  }
+
+  /**
+   * Executes a named fragment key as a streaming query, returning a stream of mapped rows.
+   * <p>
+   * This is intended for queries returning too many rows to hold in memory.
+   * Rows are read from the database as the stream is consumed.
+   * The statement is forward-only and read-only, with the fetch size and
+   * auto-commit mode controlled by {@link ElSqlConfig#getStreamingFetchSize()}
+   * and {@link ElSqlConfig#isStreamingAutoCommitDisabled()}.
+   * <p>
+   * The stream must be closed, typically using try-with-resources, to release the database resources.
+   * No other statement should be executed on the connection until the stream is closed.
+   * 
+   * @param <T>  the type of the mapped row
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @param rowMapper  the mapper for each row, not null
+   * @return the stream of mapped rows, which must be closed, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  public <T> Stream<T> stream(String name, SqlParams params, RowMapper<T> rowMapper) {
+    if (rowMapper == null) {
+      throw new IllegalArgumentException("RowMapper must not be null");
+    }
+    Map<String, Object[]> inTempTables = new LinkedHashMap<String, Object[]>();
+    String sql = _elsql.getSql(name, params, inTempTables);
+    fillInTempTables(inTempTables);
+    StreamingQuery query;
+    try {
+      query = new StreamingQuery(sql, params);
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to execute query: " + sql, ex);
+    }
+    Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(
+        Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+      private int _rowNum;
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+          if (query.next() == false) {
+            return false;
+          }
+          action.accept(rowMapper.mapRow(query._resultSet, _rowNum++));
+          return true;
+        } catch (SQLException ex) {
+          throw new UncheckedSQLException("Unable to read query results: " + sql, ex);
+        }
+      }
+    };
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        query.close();
+      } catch (SQLException ex) {
+        throw new UncheckedSQLException("Unable to close query: " + sql, ex);
+      }
+    });
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Executes rendered SQL as an update.
+   * 
+   * @param sql  the rendered SQL with named variables, not null
+   * @param params  the SQL parameters, not null
+   * @return the number of rows updated
+   */
+  int updateSql(String sql, SqlParams params) {
+    CachedStatement cached = prepare(sql);
+    try {
+      bind(cached, params);
+      return cached._statement.executeUpdate();
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to execute update: " + sql, ex);
+    } finally {
+      release(cached);
+    }
+  }
+
+  /**
+   * Executes rendered SQL as a batch update.
+   * 
+   * @param sql  the rendered SQL with named variables, not null
+   * @param rows  the SQL parameters of each row, not null
+   * @param batchSize  the maximum number of rows to send in each batch
+   * @return the number of rows updated, one element for each row
+   */
+  int[] batchUpdateSql(String sql, List<? extends SqlParams> rows, int batchSize) {
+    CachedStatement cached = prepare(sql);
+    PreparedStatement statement = cached._statement;
+    int[] result = new int[rows.size()];
+    int done = 0;
+    try {
+      try {
+        for (int i = 0; i < rows.size(); i++) {
+          bind(cached, rows.get(i));
+          statement.addBatch();
+          if (i + 1 - done == batchSize || i + 1 == rows.size()) {
+            int[] counts = statement.executeBatch();
+            System.arraycopy(counts, 0, result, done, counts.length);
+            done = i + 1;
+          }
+        }
+        return result;
+      } finally {
+        if (done < rows.size()) {
+          statement.clearBatch();
+        }
+      }
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to execute batch update: " + sql, ex);
+    } finally {
+      release(cached);
+    }
+  }
+
+  /**
+   * Executes rendered SQL as a query.
+   * 
+   * @param <T>  the type of the mapped row
+   * @param sql  the rendered SQL with named variables, not null
+   * @param params  the SQL parameters, not null
+   * @param rowMapper  the mapper for each row, not null
+   * @return the list of mapped rows, not null
+   */
+  <T> List<T> querySql(String sql, SqlParams params, RowMapper<T> rowMapper) {
+    if (rowMapper == null) {
+      throw new IllegalArgumentException("RowMapper must not be null");
+    }
+    CachedStatement cached = prepare(sql);
+    try {
+      bind(cached, params);
+      try (ResultSet rs = cached._statement.executeQuery()) {
+        List<T> result = new ArrayList<T>();
+        int rowNum = 0;
+        while (rs.next()) {
+          result.add(rowMapper.mapRow(rs, rowNum++));
+        }
+        return result;
+      }
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to execute query: " + sql, ex);
+    } finally {
+      release(cached);
+    }
+  }
+
+  /**
+   * Obtains a prepared statement for the SQL, from the cache if possible.
+   * 
+   * @param sql  the rendered SQL with named variables, not null
+   * @return the statement, not null
+   */
+  CachedStatement prepare(String sql) {
+    CachedStatement cached = _statements.get(sql);
+    ElSqlListener listener = _elsql.getListener();
+    if (listener != null && _statementCacheSize > 0) {
+      listener.statementCacheLookup(cached != null);
+    }
+    if (cached != null) {
+      return cached;
+    }
+    ParsedSql parsed = ParsedSql.parse(sql);
+    boolean cache = _statementCacheSize > 0;
+    try {
+      cached = new CachedStatement(parsed, _connection.prepareStatement(parsed.getSql()), cache);
+    } catch (SQLException ex) {
+      throw new UncheckedSQLException("Unable to prepare statement: " + sql, ex);
+    }
+    if (cache) {
+      _statements.put(sql, cached);
+      if (_statements.size() > _statementCacheSize) {
+        Iterator<CachedStatement> it = _statements.values().iterator();
+        CachedStatement eldest = it.next();
+        it.remove();
+        closeQuietly(eldest);
+      }
+    }
+    return cached;
+  }
+
+  /**
+   * Binds the parameters to the statement.
+   * 
+   * @param cached  the statement, not null
+   * @param params  the SQL parameters, not null
+   * @throws SQLException if an error occurs
+   */
+  void bind(CachedStatement cached, SqlParams params) throws SQLException {
+    Object[] values = cached._parsed.getValues(params);
+    PreparedStatement statement = cached._statement;
+    for (int i = 0; i < values.length; i++) {
+      setValue(statement, i + 1, values[i], cached._parsed.isArray(i));
+    }
+  }
+
+  /**
+   * Fills the temporary tables used by IN tags with large lists before executing a statement.
+   * <p>
+   * This only applies where {@link ElSqlConfig#getInTempTable(String, String)} is used.
+   * Each table is created if necessary, emptied and then filled using a batch insert.
+   * 
+   * @param inTempTables  the keys collected when rendering, keyed by table name, not null
+   * @throws UncheckedSQLException if a database error occurs
+   */
+  void fillInTempTables(Map<String, Object[]> inTempTables) {
+    for (Map.Entry<String, Object[]> entry : inTempTables.entrySet()) {
+      String table = entry.getKey();
+      Object[] values = entry.getValue();
+      String keyType = _elsql.getConfig().getInTempTableKeyType(values);
+      try {
+        try (Statement statement = _connection.createStatement()) {
+          statement.execute(_elsql.getConfig().getInTempTableCreate(table, keyType));
+          statement.executeUpdate("DELETE FROM " + table);
+        }
+        try (PreparedStatement statement = _connection.prepareStatement(
+            "INSERT INTO " + table + " (elsql_key) VALUES (?)")) {
+          for (int i = 0; i < values.length; i++) {
+            statement.setObject(1, values[i]);
+            statement.addBatch();
+            if ((i + 1) % DEFAULT_BATCH_SIZE == 0) {
+              statement.executeBatch();
+            }
+          }
+          statement.executeBatch();
+        }
+      } catch (SQLException ex) {
+        throw new UncheckedSQLException("Unable to fill temporary table: " + table, ex);
+      }
+    }
+  }
+
+  /**
+   * Sets a value on a statement.
+   * <p>
+   * Where the marker binds an array, as used by '= ANY(:ids)' on Postgres, a collection or
+   * object array is bound as a SQL array, with the type inferred from the first non-null element.
+   * Other values are bound using {@code setObject}.
+   * 
+   * @param statement  the statement, not null
+   * @param index  the one-based parameter index
+   * @param value  the value, may be null
+   * @param arrayMarker  whether the marker binds an array, see {@link ParsedSql#isArray(int)}
+   * @throws SQLException if a database error occurs
+   */
+  static void setValue(
+      PreparedStatement statement, int index, Object value, boolean arrayMarker) throws SQLException {
+    Object[] array = null;
+    if (arrayMarker) {
+      array = (value instanceof Collection ? ((Collection<?>) value).toArray() :
+          value instanceof Object[] ? (Object[]) value : null);
+    }
+    if (array == null) {
+      statement.setObject(index, value);
+      return;
+    }
+    String type = "varchar";
+    for (Object element : array) {
+      if (element != null) {
+        String elementType = ARRAY_TYPES.get(element.getClass());
+        type = (elementType != null ? elementType : type);
+        break;
+      }
+    }
+    statement.setArray(index, statement.getConnection().createArrayOf(type, array));
+  }
+
+  /**
+   * Releases a statement after use, closing it if it is not cached.
+   * 
+   * @param cached  the statement, not null
+   */
+  void release(CachedStatement cached) {
+    if (cached._cached == false) {
+      closeQuietly(cached);
+    }
+  }
+
+  /**
+   * Gets the number of cached statements.
+   * 
+   * @return the number of cached statements
+   */
+  int getCachedStatementCount() {
+    return _statements.size();
+  }
+
+  // closes a statement, ignoring errors
+  private static void closeQuietly(CachedStatement cached) {
+    closeQuietly(cached._statement);
+  }
+
+  // closes a statement, ignoring errors
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException ex) {
+      // ignore
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Closes the cached statements, and the connection if it was obtained from a data source.
+   * 
+   * @throws UncheckedSQLException if the connection cannot be closed
+   */
+  @Override
+  public void close() {
+    for (CachedStatement cached : _statements.values()) {
+      closeQuietly(cached);
+    }
+    _statements.clear();
+    if (_closeConnection) {
+      try {
+        _connection.close();
+      } catch (SQLException ex) {
+        throw new UncheckedSQLException("Unable to close connection", ex);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "ElSqlJdbc[" + _elsql.getConfig().getName() + "]";
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Maps a row of a result set to an object.
+   * 
+   * @param <T>  the type of the mapped row
+   */
+  public interface RowMapper<T> {
+
+    /**
+     * Maps the current row of the result set.
+     * <p>
+     * The implementation must not move the cursor of the result set.
+     * 
+     * @param rs  the result set, positioned at the row to map, not null
+     * @param rowNum  the zero-based number of the row
+     * @return the mapped object, may be null
+     * @throws SQLException if an error occurs
+     */
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Processes a row of a result set.
+   */
+  public interface RowCallback {
+
+    /**
+     * Processes the current row of the result set.
+     * <p>
+     * The implementation must not move the cursor of the result set.
+     * 
+     * @param rs  the result set, positioned at the row to process, not null
+     * @throws SQLException if an error occurs
+     */
+    public void processRow(ResultSet rs) throws SQLException;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * An open streaming query, which restores the auto-commit mode when closed.
+   */
+  private final class StreamingQuery implements AutoCloseable {
+    private final PreparedStatement _statement;
+    private final ResultSet _resultSet;
+    private final boolean _restoreAutoCommit;
+
+    StreamingQuery(String sql, SqlParams params) throws SQLException {
+      ParsedSql parsed = ParsedSql.parse(sql);
+      Object[] values = parsed.getValues(params);
+      ElSqlConfig config = _elsql.getConfig();
+      _restoreAutoCommit = config.isStreamingAutoCommitDisabled() && _connection.getAutoCommit();
+      if (_restoreAutoCommit) {
+        _connection.setAutoCommit(false);
+      }
+      PreparedStatement statement = null;
+      try {
+        statement = _connection.prepareStatement(
+            parsed.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(config.getStreamingFetchSize());
+        for (int i = 0; i < values.length; i++) {
+          setValue(statement, i + 1, values[i], parsed.isArray(i));
+        }
+        _resultSet = statement.executeQuery();
+        _statement = statement;
+      } catch (SQLException | RuntimeException ex) {
+        if (statement != null) {
+          closeQuietly(statement);
+        }
+        restoreAutoCommit();
+        throw ex;
+      }
+    }
+
+    boolean next() throws SQLException {
+      return _resultSet.next();
+    }
+
+    @Override
+    public void close() throws SQLException {
+      try {
+        _resultSet.close();
+        _statement.close();
+      } finally {
+        restoreAutoCommit();
+      }
+    }
+
+    private void restoreAutoCommit() throws SQLException {
+      if (_restoreAutoCommit) {
+        _connection.setAutoCommit(true);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A prepared statement and the parsed SQL it was prepared from.
+   */
+  static final class CachedStatement {
+    private final ParsedSql _parsed;
+    private final PreparedStatement _statement;
+    private final boolean _cached;
+
+    CachedStatement(ParsedSql parsed, PreparedStatement statement, boolean cached) {
+      _parsed = parsed;
+      _statement = statement;
+      _cached = cached;
+    }
+  }
+
+}
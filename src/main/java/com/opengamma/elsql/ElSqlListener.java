@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+/**
+ * Listener notified of the SQL rendered by a bundle, used for instrumentation.
+ * <p>
+ * A listener is attached using {@link ElSql#withListener(ElSqlListener)}.
+ * By default no listener is attached, and no timing is performed.
+ * See {@link ElSqlStatistics} for an implementation that collects statistics.
+ * <p>
+ * Implementations are called from the rendering thread and must be thread-safe.
+ * They should be fast and must not throw exceptions.
+ */
+public interface ElSqlListener {
+
+  /**
+   * Called when a named block has been rendered by {@code getSql()}.
+   * <p>
+   * This is also called for the SQL rendered by {@code getCountSql()},
+   * and once for each chunk rendered by {@code getChunkedSql()}.
+   * It is called by the default implementation of {@link #renderedShape(String, String, long)}.
+   * 
+   * @param name  the name of the block, not null
+   * @param renderNanos  the time taken to render, in nanoseconds
+   * @param sqlLength  the length of the rendered SQL
+   */
+  public void rendered(String name, long renderNanos, int sqlLength);
+
+  /**
+   * Called when a named block has been rendered, providing the SQL, which is the shape of the statement.
+   * <p>
+   * This is the method invoked by the bundle, and is only needed by listeners that examine the SQL,
+   * such as {@link ElSqlShapeCardinality}.
+   * The default implementation calls {@link #rendered(String, long, int)}.
+   * 
+   * @param name  the name of the block, not null
+   * @param sql  the rendered SQL, not null
+   * @param renderNanos  the time taken to render, in nanoseconds
+   */
+  public default void renderedShape(String name, String sql, long renderNanos) {
+    rendered(name, renderNanos, sql.length());
+  }
+
+  /**
+   * Called when a prepared statement is looked up in the statement cache of {@link ElSqlJdbc}.
+   * <p>
+   * The statement cache is keyed by the rendered SQL, thus its hit rate measures how often
+   * a previously seen SQL shape is reused. There is no separate cache of shapes.
+   * The default implementation does nothing.
+   * 
+   * @param hit  true if the statement was found in the cache
+   */
+  public default void statementCacheLookup(boolean hit) {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Combines listeners so that each is notified in turn.
+   * 
+   * @param listeners  the listeners, not null
+   * @return the combined listener, not null
+   */
+  public static ElSqlListener combined(ElSqlListener... listeners) {
+    if (listeners == null) {
+      throw new IllegalArgumentException("Listeners must not be null");
+    }
+    ElSqlListener[] copy = listeners.clone();
+    return new ElSqlListener() {
+      @Override
+      public void rendered(String name, long renderNanos, int sqlLength) {
+        for (ElSqlListener listener : copy) {
+          listener.rendered(name, renderNanos, sqlLength);
+        }
+      }
+      @Override
+      public void renderedShape(String name, String sql, long renderNanos) {
+        for (ElSqlListener listener : copy) {
+          listener.renderedShape(name, sql, renderNanos);
+        }
+      }
+      @Override
+      public void statementCacheLookup(boolean hit) {
+        for (ElSqlListener listener : copy) {
+          listener.statementCacheLookup(hit);
+        }
+      }
+    };
+  }
+
+}
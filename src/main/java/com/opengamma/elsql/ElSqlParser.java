@@ -36,10 +36,10 @@ final class ElSqlParser {
    */
   private static final String VARIABLE_OR_LITERAL = "[0-9]+|" + VARIABLE;
   /**
-   * A variable with possible LOOPINDEX suffix.
+   * A variable with possible LOOPINDEX suffix, which may be followed by a property in the extended format.
    */
   private static final String VARIABLE_LOOPINDEX =
-      "[:](?:[A-Za-z0-9_]+(?:@LOOPINDEX[123]?)?|[$]?[{][A-Za-z0-9_.]+(?:@LOOPINDEX[123]?)?[}])";
+      "[:](?:[A-Za-z0-9_]+(?:@LOOPINDEX[123]?)?|[$]?[{][A-Za-z0-9_.]+(?:@LOOPINDEX[123]?(?:[.][A-Za-z0-9_.]+)?)?[}])";
   /**
    * Text to match in AND/OR/IF.
    */
@@ -70,11 +70,16 @@ final class ElSqlParser {
    */
   private static final Pattern LOOP_PATTERN = Pattern.compile(
       "[ ]*[@]LOOP[(](" + VARIABLE_OR_LITERAL + ")[)][ ]*");
+  /**
+   * The regex for @VALUES(variable)
+   */
+  private static final Pattern VALUES_PATTERN = Pattern.compile(
+      "[ ]*[@]VALUES[(](" + VARIABLE + ")[)][ ]*");
   /**
    * The regex for @INCLUDE(variable|identifier)
    */
   private static final Pattern INCLUDE_PATTERN = Pattern.compile(
-      "[@]INCLUDE[(](" + VARIABLE + "|" + IDENTIFIER + ")[)](.*)");
+      "[@]INCLUDE[(](" + VARIABLE + "|" + IDENTIFIER + "(?:[.]" + IDENTIFIER + ")?)[)](.*)");
   /**
    * The regex for @PAGING(offsetVariableOrLiteral,fetchVariableOrLiteral)
    */
@@ -90,6 +95,20 @@ final class ElSqlParser {
    */
   private static final Pattern FETCH_PATTERN = Pattern.compile(
       "[@]FETCH[(](" + VARIABLE_OR_LITERAL + ")[)](.*)");
+  /**
+   * A single key in a keyset, column name, variable and optional direction.
+   */
+  private static final String KEYSET_KEY = "[A-Za-z0-9_.]+[ ]+" + VARIABLE + "(?:[ ]+(?:ASC|DESC))?";
+  /**
+   * The regex for @KEYSET(column variable, ...)
+   */
+  private static final Pattern KEYSET_PATTERN = Pattern.compile(
+      "[@]KEYSET[(][ ]?(" + KEYSET_KEY + "(?:[ ]?[,][ ]?" + KEYSET_KEY + ")*)[ ]?[)](.*)");
+  /**
+   * The regex for @IN(variable)
+   */
+  private static final Pattern IN_PATTERN = Pattern.compile(
+      "[@]IN[(](" + VARIABLE + ")[)](.*)");
   /**
    * The regex for @VALUE(variable)
    */
@@ -106,6 +125,14 @@ final class ElSqlParser {
    * The input.
    */
   private final List<Line> _lines = new ArrayList<Line>();
+  /**
+   * The namespace of a library, null if not a library.
+   */
+  private final String _namespace;
+  /**
+   * Whether to canonicalize literal text.
+   */
+  private final boolean _canonical;
   /**
    * The parsed output.
    */
@@ -117,6 +144,32 @@ final class ElSqlParser {
    * @param lines  the lines, not null
    */
   ElSqlParser(List<String> lines) {
+    this(lines, null);
+  }
+
+  /**
+   * Creates the parser for a library.
+   * <p>
+   * The names of the blocks in a library are qualified by the namespace, such as 'common.Columns'.
+   * Includes of unqualified names within the library refer to blocks in the same library.
+   * 
+   * @param lines  the lines, not null
+   * @param namespace  the namespace of the library, null if not a library
+   */
+  ElSqlParser(List<String> lines, String namespace) {
+    this(lines, namespace, false);
+  }
+
+  /**
+   * Creates the parser, specifying whether to canonicalize literal text.
+   * 
+   * @param lines  the lines, not null
+   * @param namespace  the namespace of the library, null if not a library
+   * @param canonical  whether to canonicalize literal text, see {@link CanonicalSql}
+   */
+  ElSqlParser(List<String> lines, String namespace, boolean canonical) {
+    _namespace = namespace;
+    _canonical = canonical;
     for (int i = 0; i < lines.size(); i++) {
       String line = lines.get(i);
       _lines.add(new Line(line, i + 1));
@@ -172,7 +225,7 @@ final class ElSqlParser {
       }
       if (line.indent() <= indent) {
         lineIterator.previous();
-        return;
+        break;
       }
       String trimmed = line.lineTrimmed();
       if (trimmed.startsWith("@NAME")) {
@@ -180,7 +233,7 @@ final class ElSqlParser {
         if (nameMatcher.matches() == false) {
           throw new IllegalArgumentException("@NAME found with invalid format: " + line);
         }
-        NameSqlFragment nameFragment = new NameSqlFragment(nameMatcher.group(1));
+        NameSqlFragment nameFragment = new NameSqlFragment(qualify(nameMatcher.group(1)));
         parseContainerSection(nameFragment, lineIterator, line.indent());
         if (nameFragment.getFragments().size() == 0) {
           throw new IllegalArgumentException("@NAME found with no subsequent indented lines: " + line);
@@ -250,6 +303,18 @@ final class ElSqlParser {
         }
         container.addFragment(ifFragment);
         
+      } else if (trimmed.startsWith("@VALUES")) {
+        Matcher valuesMatcher = VALUES_PATTERN.matcher(trimmed);
+        if (valuesMatcher.matches() == false) {
+          throw new IllegalArgumentException("@VALUES found with invalid format: " + line);
+        }
+        ValuesSqlFragment valuesFragment = new ValuesSqlFragment(valuesMatcher.group(1));
+        parseContainerSection(valuesFragment, lineIterator, line.indent());
+        if (valuesFragment.getFragments().size() == 0) {
+          throw new IllegalArgumentException("@VALUES found with no subsequent indented lines: " + line);
+        }
+        container.addFragment(valuesFragment);
+        
       } else if (trimmed.startsWith("@LOOP")) {
         if (trimmed.startsWith("@LOOPINDEX") || trimmed.startsWith("@LOOPJOIN")) {
           parseLine(container, line);
@@ -270,6 +335,20 @@ final class ElSqlParser {
         parseLine(container, line);
       }
     }
+    // text merged from several lines is canonicalized as a whole
+    if (_canonical) {
+      container.canonicalizeText();
+    }
+  }
+
+  /**
+   * Qualifies a name by the namespace of the library.
+   * 
+   * @param name  the name, not null
+   * @return the qualified name, not null
+   */
+  private String qualify(String name) {
+    return (_namespace != null ? _namespace + "." + name : name);
   }
 
   /**
@@ -315,6 +394,12 @@ final class ElSqlParser {
     } else  if (trimmed.contains("@FETCH")) {
       parseFetchTag(container, line);
       
+    } else  if (trimmed.contains("@KEYSET")) {
+      parseKeysetTag(container, line);
+      
+    } else  if (trimmed.contains("@IN(")) {
+      parseInTag(container, line);
+      
     } else  if (trimmed.contains("@VALUE")) {
       parseValueTag(container, line);
       
@@ -351,7 +436,11 @@ final class ElSqlParser {
     if (matcher.matches() == false) {
       throw new IllegalArgumentException("@INCLUDE found with invalid format: " + line);
     }
-    IncludeSqlFragment includeFragment = new IncludeSqlFragment(matcher.group(1));
+    String includeKey = matcher.group(1);
+    if (includeKey.startsWith(":") == false && includeKey.indexOf('.') < 0) {
+      includeKey = qualify(includeKey);
+    }
+    IncludeSqlFragment includeFragment = new IncludeSqlFragment(includeKey);
     container.addFragment(includeFragment);
     
     Line subLine = split[1].splitRemainder(matcher.start(2));
@@ -465,6 +554,67 @@ final class ElSqlParser {
     parseLine(container, subLine);
   }
 
+  /**
+   * Parse KEYSET tag.
+   * <p>
+   * This tag can appear anywhere in a line.
+   * The text before is treated as simple text.
+   * The text after is parsed.
+   * 
+   * @param container  the container to add to, not null
+   * @param line  the line to parse, not null
+   */
+  private void parseKeysetTag(ContainerSqlFragment container, Line line) {
+    Line[] split = line.split(line.lineTrimmed().indexOf("@KEYSET"));
+    parseLine(container, split[0]);
+    String trimmed = split[1].lineTrimmed();
+    
+    Matcher matcher = KEYSET_PATTERN.matcher(trimmed);
+    if (matcher.matches() == false) {
+      throw new IllegalArgumentException("@KEYSET found with invalid format: " + line);
+    }
+    List<String> columns = new ArrayList<String>();
+    List<String> variables = new ArrayList<String>();
+    List<Boolean> descending = new ArrayList<Boolean>();
+    for (String key : matcher.group(1).split(",")) {
+      String[] parts = key.trim().split("[ ]+");
+      columns.add(parts[0]);
+      variables.add(parts[1]);
+      descending.add(parts.length > 2 && parts[2].equals("DESC"));
+    }
+    KeysetSqlFragment keysetFragment = new KeysetSqlFragment(columns, variables, descending);
+    container.addFragment(keysetFragment);
+    
+    Line subLine = split[1].splitRemainder(matcher.start(2));
+    parseLine(container, subLine);
+  }
+
+  /**
+   * Parse IN tag.
+   * <p>
+   * This tag can appear anywhere in a line.
+   * The text before is treated as simple text.
+   * The text after is parsed.
+   * 
+   * @param container  the container to add to, not null
+   * @param line  the line to parse, not null
+   */
+  private void parseInTag(ContainerSqlFragment container, Line line) {
+    Line[] split = line.split(line.lineTrimmed().indexOf("@IN("));
+    parseLine(container, split[0]);
+    String trimmed = split[1].lineTrimmed();
+    
+    Matcher matcher = IN_PATTERN.matcher(trimmed);
+    if (matcher.matches() == false) {
+      throw new IllegalArgumentException("@IN found with invalid format: " + line);
+    }
+    InSqlFragment inFragment = new InSqlFragment(matcher.group(1));
+    container.addFragment(inFragment);
+    
+    Line subLine = split[1].splitRemainder(matcher.start(2));
+    parseLine(container, subLine);
+  }
+
   /**
    * Parse VALUE tag.
    * <p>
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A registry of parsed bundles, ensuring that each set of resources is only parsed once.
+ * <p>
+ * Calling {@link ElSql#of(ElSqlConfig, Class)} reads and parses the resources each time.
+ * Where bundles are created frequently, such as in the constructor of prototype-scoped
+ * data access objects or for each tenant, this registry should be used instead.
+ * <p>
+ * Each resource is parsed once, as a layer of named blocks, keyed by its URL.
+ * Bundles are keyed by the list of resource URLs, and overlay the layers,
+ * with later resources overriding earlier ones.
+ * Thus, where {@link #of(ElSqlConfig, Class)} finds a base file and a config-specific
+ * override file, the base file is parsed once and shared by all configs.
+ * The parsed form is independent of the config, so bundles for different configs
+ * that use the same resources share the parsed form via {@link ElSql#withConfig(ElSqlConfig)}.
+ * The exception is {@link ElSqlConfig#isCanonicalText()}, which is applied when parsing,
+ * thus configs that canonicalize literal text share a separate parsed form.
+ * <p>
+ * Bundles remain in the registry until evicted, either explicitly or when unused for a period.
+ * <p>
+ * Shared libraries of blocks can be registered using {@link #registerLibrary(String, URL)}.
+ * The blocks in a library are named by qualifying with the namespace, such as 'common.Columns',
+ * and are available to every bundle in the registry via {@code @INCLUDE(common.Columns)}.
+ * Each library is parsed once, and includes of library blocks are checked when the bundle is linked.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ElSqlRegistry {
+
+  /**
+   * The global instance.
+   */
+  private static final ElSqlRegistry GLOBAL = new ElSqlRegistry();
+
+  /**
+   * The parsed layers, keyed by resource URL.
+   */
+  private final ConcurrentMap<String, Map<String, NameSqlFragment>> _layers =
+      new ConcurrentHashMap<String, Map<String, NameSqlFragment>>();
+  /**
+   * The parsed libraries, keyed by namespace.
+   */
+  private final ConcurrentMap<String, Map<String, NameSqlFragment>> _libraries =
+      new ConcurrentHashMap<String, Map<String, NameSqlFragment>>();
+  /**
+   * The parsed bundles, keyed by the list of resource URLs.
+   */
+  private final ConcurrentMap<List<String>, Registered> _bundles =
+      new ConcurrentHashMap<List<String>, Registered>();
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the global registry.
+   * 
+   * @return the global registry, not null
+   */
+  public static ElSqlRegistry global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Creates an empty registry.
+   */
+  public ElSqlRegistry() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Registers a shared library of blocks, parsing it immediately.
+   * <p>
+   * The namespace qualifies the names of the blocks in the library.
+   * Thus, a block '@NAME(Columns)' in a library registered as 'common' is included
+   * from any bundle in this registry using {@code @INCLUDE(common.Columns)}.
+   * Within the library itself, unqualified includes refer to blocks in the same library.
+   * The literal text of a library is parsed as written, without canonicalization.
+   * <p>
+   * Registering a library replaces any library with the same namespace.
+   * Bundles already registered are evicted, so that they are linked against the new library.
+   * 
+   * @param namespace  the namespace, formed of letters, digits and underscores, not null
+   * @param resource  the library resource, not null
+   * @throws IllegalArgumentException if the namespace is invalid or the input cannot be parsed
+   */
+  public void registerLibrary(String namespace, URL resource) {
+    if (namespace == null || namespace.matches("[A-Za-z0-9_]+") == false) {
+      throw new IllegalArgumentException("Namespace must consist of letters, digits and underscores: " + namespace);
+    }
+    if (resource == null) {
+      throw new IllegalArgumentException("Resource must not be null");
+    }
+    Map<String, NameSqlFragment> library =
+        SqlFragments.parseLayer(SqlFragments.loadResource(resource), resource.toExternalForm(), namespace);
+    _libraries.put(namespace, library);
+    _bundles.clear();
+  }
+
+  /**
+   * Gets the namespaces of the registered libraries.
+   * 
+   * @return the namespaces, not null
+   */
+  public Set<String> getLibraries() {
+    return Collections.unmodifiableSet(new HashSet<String>(_libraries.keySet()));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Obtains a bundle for the specified type, parsing the resources only if not already registered.
+   * <p>
+   * This locates the resources in the same way as {@link ElSql#of(ElSqlConfig, Class)}.
+   * 
+   * @param config  the config, not null
+   * @param type  the type, not null
+   * @return the bundle, not null
+   * @throws IllegalArgumentException if the input cannot be parsed or if no matching resource exists
+   */
+  public ElSql of(ElSqlConfig config, Class<?> type) {
+    if (config == null) {
+      throw new IllegalArgumentException("Config must not be null");
+    }
+    if (type == null) {
+      throw new IllegalArgumentException("Type must not be null");
+    }
+    URL baseResource = type.getResource(type.getSimpleName() + ".elsql");
+    URL configResource = type.getResource(type.getSimpleName() + "-" + config.getName() + ".elsql");
+    return parse(config, baseResource, configResource);
+  }
+
+  /**
+   * Obtains a bundle for the specified resources, parsing them only if not already registered.
+   * <p>
+   * This parses the resources in the same way as {@link ElSql#parse(ElSqlConfig, URL...)}.
+   * 
+   * @param config  the config, not null
+   * @param resources  the resources to load, not null, may contain nulls which are ignored
+   * @return the bundle, not null
+   * @throws IllegalArgumentException if the input cannot be parsed or if none of the resources exists
+   */
+  public ElSql parse(ElSqlConfig config, URL... resources) {
+    if (config == null) {
+      throw new IllegalArgumentException("Config must not be null");
+    }
+    if (resources == null) {
+      throw new IllegalArgumentException("Resources must not be null");
+    }
+    boolean canonical = config.isCanonicalText();
+    List<String> key = new ArrayList<String>();
+    for (URL resource : resources) {
+      if (resource != null) {
+        key.add(layerKey(resource, canonical));
+      }
+    }
+    Registered entry = _bundles.get(key);
+    if (entry == null) {
+      entry = _bundles.computeIfAbsent(
+          Collections.unmodifiableList(key), k -> new Registered(merge(resources, canonical)));
+    }
+    entry._lastAccessNanos = System.nanoTime();
+    return new ElSql(entry._fragments.withConfig(config));
+  }
+
+  // the key of a layer, which differs when the literal text is canonicalized
+  private static String layerKey(URL resource, boolean canonical) {
+    return (canonical ? "canonical:" : "") + resource.toExternalForm();
+  }
+
+  // merges the libraries and the layers of the resources, parsing each layer if necessary
+  private SqlFragments merge(URL[] resources, boolean canonical) {
+    List<Map<String, NameSqlFragment>> layers = new ArrayList<Map<String, NameSqlFragment>>();
+    boolean found = false;
+    for (URL resource : resources) {
+      if (resource != null) {
+        layers.add(_layers.computeIfAbsent(
+            layerKey(resource, canonical),
+            k -> SqlFragments.parseLayer(
+                SqlFragments.loadResource(resource), resource.toExternalForm(), null, canonical)));
+        found = true;
+      }
+    }
+    if (found == false) {
+      throw new IllegalArgumentException("No matching resource was found");
+    }
+    layers.addAll(0, _libraries.values());
+    return SqlFragments.merge(layers, ElSqlConfig.DEFAULT);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of parsed bundles in the registry.
+   * 
+   * @return the number of bundles
+   */
+  public int size() {
+    return _bundles.size();
+  }
+
+  /**
+   * Evicts bundles that have not been obtained from the registry within the specified time.
+   * <p>
+   * Bundles already obtained remain usable, but the resources will be parsed again
+   * the next time the bundle is requested.
+   * 
+   * @param unusedTime  the amount of time, not negative
+   * @param unit  the unit of time, not null
+   * @return the number of bundles evicted
+   */
+  public int evictUnused(long unusedTime, TimeUnit unit) {
+    if (unusedTime < 0) {
+      throw new IllegalArgumentException("Unused time must not be negative");
+    }
+    if (unit == null) {
+      throw new IllegalArgumentException("Unit must not be null");
+    }
+    long cutoff = System.nanoTime() - unit.toNanos(unusedTime);
+    int evicted = 0;
+    for (Map.Entry<List<String>, Registered> mapEntry : _bundles.entrySet()) {
+      Registered entry = mapEntry.getValue();
+      if (entry._lastAccessNanos - cutoff <= 0 && _bundles.remove(mapEntry.getKey(), entry)) {
+        evicted++;
+      }
+    }
+    if (evicted > 0) {
+      evictUnusedLayers();
+    }
+    return evicted;
+  }
+
+  // evicts layers that are not used by any bundle
+  private void evictUnusedLayers() {
+    Set<String> used = new HashSet<String>();
+    for (List<String> key : _bundles.keySet()) {
+      used.addAll(key);
+    }
+    _layers.keySet().retainAll(used);
+  }
+
+  /**
+   * Gets the number of parsed layers in the registry, one for each resource.
+   * 
+   * @return the number of layers
+   */
+  int getLayerCount() {
+    return _layers.size();
+  }
+
+  /**
+   * Evicts all bundles from the registry.
+   * <p>
+   * Registered libraries are retained.
+   */
+  public void clear() {
+    _bundles.clear();
+    _layers.clear();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "ElSqlRegistry[size=" + size() + "]";
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * A registered bundle.
+   */
+  private static final class Registered {
+    private final SqlFragments _fragments;
+    private volatile long _lastAccessNanos;
+
+    Registered(SqlFragments fragments) {
+      _fragments = fragments;
+      _lastAccessNanos = System.nanoTime();
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A listener that tracks the number of distinct SQL shapes rendered by each named block.
+ * <p>
+ * A named block that renders many distinct SQL strings, for example due to literal values
+ * or loop sizes, defeats the statement and plan caches of the database.
+ * This listener estimates the number of distinct SQL strings for each block using
+ * a HyperLogLog sketch, which uses a small fixed amount of memory per block.
+ * The estimate has a standard error of about 3%.
+ * <p>
+ * A callback can be registered that is invoked once for each block the first time
+ * its estimated cardinality exceeds a threshold.
+ * <p>
+ * This class is mutable and thread-safe.
+ */
+public final class ElSqlShapeCardinality implements ElSqlListener {
+
+  /**
+   * The threshold, above which the callback is invoked.
+   */
+  private final long _threshold;
+  /**
+   * The callback, null if none.
+   */
+  private final ObjLongConsumer<String> _callback;
+  /**
+   * The sketches, keyed by name.
+   */
+  private final ConcurrentMap<String, Shapes> _shapes = new ConcurrentHashMap<String, Shapes>();
+
+  /**
+   * Creates an instance with no threshold.
+   */
+  public ElSqlShapeCardinality() {
+    _threshold = Long.MAX_VALUE;
+    _callback = null;
+  }
+
+  /**
+   * Creates an instance with a threshold.
+   * <p>
+   * The callback is passed the name of the block and the estimated cardinality.
+   * It is invoked on the rendering thread, so it should be fast.
+   * 
+   * @param threshold  the cardinality above which the callback is invoked, not negative
+   * @param callback  the callback, not null
+   */
+  public ElSqlShapeCardinality(long threshold, ObjLongConsumer<String> callback) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Threshold must not be negative");
+    }
+    if (callback == null) {
+      throw new IllegalArgumentException("Callback must not be null");
+    }
+    _threshold = threshold;
+    _callback = callback;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public void rendered(String name, long renderNanos, int sqlLength) {
+    // not used, as the SQL is needed
+  }
+
+  @Override
+  public void renderedShape(String name, String sql, long renderNanos) {
+    Shapes shapes = _shapes.get(name);
+    if (shapes == null) {
+      shapes = _shapes.computeIfAbsent(name, key -> new Shapes());
+    }
+    if (shapes._sketch.add(sql) && _callback != null && shapes._alarmed.get() == false) {
+      long cardinality = shapes._sketch.estimate();
+      if (cardinality > _threshold && shapes._alarmed.compareAndSet(false, true)) {
+        _callback.accept(name, cardinality);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the estimated number of distinct SQL shapes rendered by a named block.
+   * 
+   * @param name  the name, not null
+   * @return the estimated cardinality, zero if the block has not been rendered
+   */
+  public long getCardinality(String name) {
+    Shapes shapes = _shapes.get(name);
+    return (shapes == null ? 0 : shapes._sketch.estimate());
+  }
+
+  /**
+   * Gets the estimated number of distinct SQL shapes rendered by each named block.
+   * 
+   * @return the estimated cardinality keyed by name, sorted by name, not null
+   */
+  public Map<String, Long> getCardinalities() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (Map.Entry<String, Shapes> entry : _shapes.entrySet()) {
+      result.put(entry.getKey(), entry.getValue()._sketch.estimate());
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Resets the tracked shapes, allowing the callback to be invoked again.
+   */
+  public void reset() {
+    _shapes.clear();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "ElSqlShapeCardinality" + getCardinalities();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The shapes of a single named block.
+   */
+  private static final class Shapes {
+    private final HyperLogLog _sketch = new HyperLogLog();
+    private final AtomicBoolean _alarmed = new AtomicBoolean();
+  }
+
+}
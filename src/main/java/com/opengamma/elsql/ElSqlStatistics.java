@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A listener that collects statistics about rendering.
+ * <p>
+ * This records the number of calls, render time and output length for each named block,
+ * together with the hit rate of the {@link ElSqlJdbc} statement cache.
+ * As the statement cache is keyed by the rendered SQL, its hit rate is the rate at which
+ * rendered SQL shapes are reused; there is no separate cache of shapes.
+ * The statistics can be read at any time, for example to publish to a metrics library
+ * using gauges or function counters.
+ * <p>
+ * This class is mutable and thread-safe.
+ */
+public final class ElSqlStatistics implements ElSqlListener {
+
+  /**
+   * The statistics, keyed by name.
+   */
+  private final ConcurrentMap<String, FragmentStatistics> _fragments =
+      new ConcurrentHashMap<String, FragmentStatistics>();
+  /**
+   * The statement cache hits.
+   */
+  private final LongAdder _cacheHits = new LongAdder();
+  /**
+   * The statement cache misses.
+   */
+  private final LongAdder _cacheMisses = new LongAdder();
+
+  /**
+   * Creates an instance.
+   */
+  public ElSqlStatistics() {
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public void rendered(String name, long renderNanos, int sqlLength) {
+    FragmentStatistics stats = _fragments.get(name);
+    if (stats == null) {
+      stats = _fragments.computeIfAbsent(name, FragmentStatistics::new);
+    }
+    stats.record(renderNanos, sqlLength);
+  }
+
+  @Override
+  public void statementCacheLookup(boolean hit) {
+    (hit ? _cacheHits : _cacheMisses).increment();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the statistics for each named block that has been rendered.
+   * 
+   * @return the statistics keyed by name, sorted by name, not null
+   */
+  public Map<String, FragmentStatistics> getFragmentStatistics() {
+    return Collections.unmodifiableMap(new TreeMap<String, FragmentStatistics>(_fragments));
+  }
+
+  /**
+   * Gets the statistics for a named block.
+   * 
+   * @param name  the name, not null
+   * @return the statistics, null if the block has not been rendered
+   */
+  public FragmentStatistics getFragmentStatistics(String name) {
+    return _fragments.get(name);
+  }
+
+  /**
+   * Gets the number of statement cache hits.
+   * 
+   * @return the number of hits
+   */
+  public long getStatementCacheHits() {
+    return _cacheHits.sum();
+  }
+
+  /**
+   * Gets the number of statement cache misses.
+   * 
+   * @return the number of misses
+   */
+  public long getStatementCacheMisses() {
+    return _cacheMisses.sum();
+  }
+
+  /**
+   * Gets the statement cache hit rate.
+   * 
+   * @return the hit rate, from 0 to 1, zero if there have been no lookups
+   */
+  public double getStatementCacheHitRate() {
+    long hits = _cacheHits.sum();
+    long total = hits + _cacheMisses.sum();
+    return (total == 0 ? 0d : ((double) hits) / total);
+  }
+
+  /**
+   * Resets all the statistics.
+   */
+  public void reset() {
+    _fragments.clear();
+    _cacheHits.reset();
+    _cacheMisses.reset();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "ElSqlStatistics[" + getFragmentStatistics().values() + ", cacheHitRate=" + getStatementCacheHitRate() + "]";
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The statistics for a single named block.
+   * <p>
+   * This class is mutable and thread-safe.
+   */
+  public static final class FragmentStatistics {
+    private final String _name;
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _totalNanos = new LongAdder();
+    private final LongAccumulator _maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder _totalLength = new LongAdder();
+
+    FragmentStatistics(String name) {
+      _name = name;
+    }
+
+    void record(long renderNanos, int sqlLength) {
+      _count.increment();
+      _totalNanos.add(renderNanos);
+      _maxNanos.accumulate(renderNanos);
+      _totalLength.add(sqlLength);
+    }
+
+    /**
+     * Gets the name of the block.
+     * 
+     * @return the name, not null
+     */
+    public String getName() {
+      return _name;
+    }
+
+    /**
+     * Gets the number of times the block has been rendered.
+     * 
+     * @return the count
+     */
+    public long getCount() {
+      return _count.sum();
+    }
+
+    /**
+     * Gets the total time spent rendering the block.
+     * 
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos() {
+      return _totalNanos.sum();
+    }
+
+    /**
+     * Gets the maximum time spent rendering the block.
+     * 
+     * @return the maximum time in nanoseconds
+     */
+    public long getMaxNanos() {
+      return _maxNanos.get();
+    }
+
+    /**
+     * Gets the total length of SQL output by the block.
+     * 
+     * @return the total length
+     */
+    public long getTotalLength() {
+      return _totalLength.sum();
+    }
+
+    @Override
+    public String toString() {
+      return _name + "[count=" + getCount() + ", totalNanos=" + getTotalNanos() +
+          ", maxNanos=" + getMaxNanos() + ", totalLength=" + getTotalLength() + "]";
+    }
+  }
+
+}
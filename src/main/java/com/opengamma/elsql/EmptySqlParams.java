@@ -32,4 +32,9 @@ final class EmptySqlParams implements SqlParams {
     return null;
   }
 
+  @Override
+  public Object lookup(String variable) {
+    return NOT_FOUND;
+  }
+
 }
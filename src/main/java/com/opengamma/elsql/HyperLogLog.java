@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct strings.
+ * <p>
+ * This uses 1024 registers, giving a standard error of about 3% in a fixed amount of memory.
+ * <p>
+ * This class is mutable and thread-safe.
+ */
+final class HyperLogLog {
+
+  /**
+   * The number of bits of the hash used to select the register.
+   */
+  private static final int PRECISION = 10;
+  /**
+   * The number of registers.
+   */
+  private static final int REGISTERS = 1 << PRECISION;
+  /**
+   * The bias correction constant for the number of registers.
+   */
+  private static final double ALPHA = 0.7213d / (1d + 1.079d / REGISTERS);
+
+  /**
+   * The registers, each holding the maximum rank seen.
+   */
+  private final AtomicIntegerArray _registers = new AtomicIntegerArray(REGISTERS);
+
+  /**
+   * Creates an instance.
+   */
+  HyperLogLog() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Adds a string to the sketch.
+   * 
+   * @param str  the string to add, not null
+   * @return true if the estimate may have changed
+   */
+  boolean add(String str) {
+    long hash = hash(str);
+    int index = (int) (hash >>> (64 - PRECISION));
+    int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+    int current = _registers.get(index);
+    while (rank > current) {
+      if (_registers.compareAndSet(index, current, rank)) {
+        return true;
+      }
+      current = _registers.get(index);
+    }
+    return false;
+  }
+
+  /**
+   * Estimates the number of distinct strings added.
+   * 
+   * @return the estimate
+   */
+  long estimate() {
+    double sum = 0;
+    int zeros = 0;
+    for (int i = 0; i < REGISTERS; i++) {
+      int value = _registers.get(i);
+      sum += 1d / (1L << value);
+      if (value == 0) {
+        zeros++;
+      }
+    }
+    double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+    if (estimate <= 2.5d * REGISTERS && zeros > 0) {
+      // linear counting is more accurate for small cardinalities
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  // 64-bit FNV-1a hash of the characters, with a final mix to spread the bits
+  private static long hash(String str) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < str.length(); i++) {
+      hash ^= str.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= (hash >>> 33);
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= (hash >>> 33);
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= (hash >>> 33);
+    return hash;
+  }
+
+}
@@ -22,12 +22,4 @@ final class IfSqlFragment extends ConditionalSqlFragment {
     super(variable, matchValue);
   }
 
-  //-------------------------------------------------------------------------
-  @Override
-  void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
-    if (isMatch(params, loopIndex)) {
-      super.toSQL(buf, fragments, params, loopIndex);
-    }
-  }
-
 }
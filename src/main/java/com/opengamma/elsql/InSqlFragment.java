@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+
+/**
+ * Representation of IN(variable).
+ * <p>
+ * This outputs a set-membership test against a list or array variable.
+ * The SQL depends on the database, such as '= ANY(:ids)' to bind an array on Postgres,
+ * or an IN list with a variable for each element, padded to a bucketed size, on other databases.
+ * A large list may instead select from a temporary table, in which case the keys are added to the
+ * temporary tables collected by the {@link SqlRenderContext}. As only {@link ElSqlJdbc} fills the tables,
+ * rendering such a list without a context is rejected rather than producing SQL that matches no rows.
+ * Similarly, where the context indicates that arrays are not bound, such as with Spring,
+ * SQL that binds the list as an array is rejected.
+ */
+final class InSqlFragment extends SqlFragment {
+
+  /**
+   * The list variable name (without the colon).
+   */
+  private final String _variable;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param variable  the variable determining the list, not null
+   */
+  InSqlFragment(String variable) {
+    _variable = extractVariableName(variable);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the list variable name.
+   * 
+   * @return the variable name, not null
+   */
+  String getVariable() {
+    return _variable;
+  }
+
+  /**
+   * Extracts the list from the variable.
+   * 
+   * @param params  the SQL parameters, not null
+   * @return the list, which is a collection or array, not null
+   * @throws IllegalArgumentException if the variable is not found or is not a list
+   */
+  Object extractList(SqlParams params) {
+    Object value = params.lookup(_variable);
+    if (value instanceof Collection || (value != null && value.getClass().isArray())) {
+      return value;
+    } else if (value == null || value == SqlParams.NOT_FOUND) {
+      throw new IllegalArgumentException("In list variable not found: " + _variable);
+    } else {
+      throw new IllegalArgumentException("In list variable must be a Collection or array: " + _variable);
+    }
+  }
+
+  /**
+   * Extracts the elements of the list from the variable.
+   * 
+   * @param params  the SQL parameters, not null
+   * @return the elements, not null
+   * @throws IllegalArgumentException if the variable is not found or is not a list
+   */
+  Object[] extractValues(SqlParams params) {
+    Object list = extractList(params);
+    if (list instanceof Collection) {
+      return ((Collection<?>) list).toArray();
+    }
+    Object[] values = new Object[Array.getLength(list)];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = Array.get(list, i);
+    }
+    return values;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    Object list = extractList(params);
+    int size = (list instanceof Collection ? ((Collection<?>) list).size() : Array.getLength(list));
+    ElSqlConfig config = fragments.getConfig();
+    if (size > config.getInThreshold()) {
+      Object[] values = extractValues(params);
+      String table = config.getInTempTable(_variable, config.getInTempTableKeyType(values));
+      if (table != null) {
+        SqlRenderContext context = SqlRenderContext.current();
+        if (context == null || context.isCollectingInTempTables() == false) {
+          throw new IllegalArgumentException("In list of size " + size + " requires a temporary table, " +
+              "which is only filled when executing using ElSqlJdbc: " + _variable);
+        }
+        context.addInTempTable(table, values);
+        buf.append("IN (SELECT elsql_key FROM ").append(table).append(") ");
+        return;
+      }
+    }
+    String in = config.getIn(_variable, size);
+    SqlRenderContext context = SqlRenderContext.current();
+    if (context != null && context.isArrayBinding() == false && ParsedSql.parse(in).isAnyArray()) {
+      throw new IllegalArgumentException("In list would be bound as a SQL array, which is only supported " +
+          "when executing using ElSqlJdbc: " + _variable);
+    }
+    buf.append(in);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + ":" + _variable;
+  }
+
+}
@@ -5,13 +5,29 @@
  */
 package com.opengamma.elsql;
 
+import java.util.Map;
+
 /**
  * Representation of INCLUDE(key).
  * <p>
  * This can include another named SQL fragment or directly include a parameter.
+ * <p>
+ * An include of a literal name is static, and is linked to the named fragment when the
+ * bundle is built, failing fast if the name is unknown or the includes form a cycle.
+ * Since the parsed fragments may be shared between bundles, the link is held by the
+ * bundle, not by this immutable fragment. When interpreted, each render therefore still
+ * looks up the link, keyed by the identity of this fragment rather than by name.
+ * When compiled, see {@link ElSqlConfig#isCompiledRendering()}, the include is resolved once
+ * to the renderer of the linked fragment, so no lookup occurs when rendering.
  */
 final class IncludeSqlFragment extends SqlFragment {
 
+  /**
+   * The current depth of includes of a variable on each thread.
+   * A mutable array is used so that rendering does not allocate.
+   */
+  private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
   /**
    * The include key.
    */
@@ -29,18 +45,71 @@ final class IncludeSqlFragment extends SqlFragment {
     _includeKey = includeKey;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the include key.
+   * 
+   * @return the include key, which is a variable if it starts with a colon, not null
+   */
+  String getIncludeKey() {
+    return _includeKey;
+  }
+
+  /**
+   * Checks if the include is static, referring to a literal name rather than a variable.
+   * 
+   * @return true if static
+   */
+  boolean isStatic() {
+    return _includeKey.startsWith(":") == false;
+  }
+
+  /**
+   * Resolves this static include against the map of fragments of a bundle.
+   * 
+   * @param map  the map of fragments being built, not null
+   * @return the included fragment, not null
+   * @throws IllegalArgumentException if there is no fragment with the name
+   */
+  NameSqlFragment resolve(Map<String, NameSqlFragment> map) {
+    NameSqlFragment target = map.get(_includeKey);
+    if (target == null) {
+      throw new IllegalArgumentException("Unknown fragment name in @INCLUDE: " + _includeKey);
+    }
+    return target;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    if (isStatic()) {
+      NameSqlFragment linked = fragments.getLinkedFragment(this);
+      NameSqlFragment unit = (linked != null ? linked : fragments.getFragment(_includeKey));
+      unit.toSQL(buf, fragments, params, loopIndex);
+      return;
+    }
     String key = _includeKey;
-    if (key.startsWith(":")) {
-      String var = extractVariableName(key);
-      if (params.contains(var)) {
-        key = params.get(var).toString();
-      }
+    Object value = params.lookup(extractVariableName(key));
+    if (value != SqlParams.NOT_FOUND) {
+      key = value.toString();
     }
     NameSqlFragment unit = fragments.getFragment(key);
-    unit.toSQL(buf, fragments, params, loopIndex);
+    int[] depth = DEPTH.get();
+    if (depth[0] >= fragments.getConfig().getMaxIncludeDepth()) {
+      throw new IllegalArgumentException(
+          "Maximum @INCLUDE depth of " + fragments.getConfig().getMaxIncludeDepth() + " exceeded including " + key);
+    }
+    depth[0]++;
+    try {
+      unit.toSQL(buf, fragments, params, loopIndex);
+    } finally {
+      depth[0]--;
+    }
+  }
+
+  @Override
+  SqlRenderer compile(SqlCompiler compiler) {
+    return (isStatic() ? compiler.compileInclude(this) : super.compile(compiler));
   }
 
   //-------------------------------------------------------------------------
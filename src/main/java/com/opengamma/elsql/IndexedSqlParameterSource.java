@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+/**
+ * A Spring parameter source that resolves the indexed names output by the loop and in tags.
+ * <p>
+ * A loop over a list outputs variables such as ':ids0' or ':rows0.id', and an IN list outputs padded
+ * variables such as ':ids3'. These are not in the caller's source, so this class resolves each such name
+ * to the element, or property of the element, of the list in the underlying source.
+ * Wrap the source passed to {@code ElSqlBundle} in this class when calling Spring's
+ * {@code NamedParameterJdbcTemplate}, so that the indexed names can be bound.
+ * Values that exist in the underlying source take priority.
+ * <p>
+ * This class has a dependency on the Spring framework.
+ * This class is immutable and thread-safe if the underlying source is.
+ */
+public final class IndexedSqlParameterSource implements SqlParameterSource {
+
+  /**
+   * The underlying source.
+   */
+  private final SqlParameterSource _underlying;
+  /**
+   * The underlying source as parameters.
+   */
+  private final SqlParams _params;
+
+  /**
+   * Creates an instance based on a source.
+   * 
+   * @param underlying  the underlying source, not null
+   */
+  public IndexedSqlParameterSource(SqlParameterSource underlying) {
+    if (underlying == null) {
+      throw new IllegalArgumentException("Source must not be null");
+    }
+    _underlying = underlying;
+    _params = new SpringSqlParams(underlying);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public boolean hasValue(String paramName) {
+    return _underlying.hasValue(paramName) ||
+        IndexedSqlParams.lookupIndexed(_params, paramName) != SqlParams.NOT_FOUND;
+  }
+
+  @Override
+  public Object getValue(String paramName) {
+    if (_underlying.hasValue(paramName)) {
+      return _underlying.getValue(paramName);
+    }
+    Object value = IndexedSqlParams.lookupIndexed(_params, paramName);
+    if (value == SqlParams.NOT_FOUND) {
+      throw new IllegalArgumentException("No value registered for key '" + paramName + "'");
+    }
+    return value;
+  }
+
+  @Override
+  public int getSqlType(String paramName) {
+    return (_underlying.hasValue(paramName) ? _underlying.getSqlType(paramName) : TYPE_UNKNOWN);
+  }
+
+  @Override
+  public String getTypeName(String paramName) {
+    return (_underlying.hasValue(paramName) ? _underlying.getTypeName(paramName) : null);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "IndexedSqlParameterSource[" + _underlying + "]";
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provides access to the elements of list variables by indexed name.
+ * <p>
+ * A loop over a list outputs variables such as ':ids@LOOPINDEX', which become ':ids0', ':ids1' and so on.
+ * This class resolves such a name to the element of the list at the index, and a name such as
+ * 'rows0.id' to the property of the element, without creating a parameter for each element.
+ * The list may be a {@code List} or an array, as other collections cannot be indexed.
+ * The element property is obtained from a {@code Map}, a {@code SqlParams} or a public getter.
+ * Variables that exist in the underlying parameters take priority.
+ * The getter of each property is looked up once per class and cached.
+ * <p>
+ * The indexed names are resolved when rendering and when binding by {@code ElSqlJdbc}.
+ * Spring's {@code NamedParameterJdbcTemplate} binds from the caller's {@code SqlParameterSource},
+ * thus callers using Spring wrap the source in {@link IndexedSqlParameterSource}.
+ * <p>
+ * This class is immutable and thread-safe if the underlying parameters are.
+ */
+final class IndexedSqlParams implements SqlParams {
+
+  /**
+   * The getters of each class, keyed by property name, empty if there is no getter.
+   */
+  private static final ClassValue<ConcurrentMap<String, Optional<Method>>> GETTERS =
+      new ClassValue<ConcurrentMap<String, Optional<Method>>>() {
+        @Override
+        protected ConcurrentMap<String, Optional<Method>> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<String, Optional<Method>>();
+        }
+      };
+
+  /**
+   * The underlying parameters.
+   */
+  private final SqlParams _underlying;
+
+  /**
+   * Wraps the parameters, unless already wrapped.
+   * 
+   * @param underlying  the underlying parameters, not null
+   * @return the parameters, not null
+   */
+  static SqlParams of(SqlParams underlying) {
+    return (underlying instanceof IndexedSqlParams ? underlying : new IndexedSqlParams(underlying));
+  }
+
+  /**
+   * Creates an instance.
+   * 
+   * @param underlying  the underlying parameters, not null
+   */
+  private IndexedSqlParams(SqlParams underlying) {
+    _underlying = underlying;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public boolean contains(String variable) {
+    return lookup(variable) != NOT_FOUND;
+  }
+
+  @Override
+  public Object get(String variable) {
+    Object value = lookup(variable);
+    return (value == NOT_FOUND ? null : value);
+  }
+
+  @Override
+  public Object lookup(String variable) {
+    Object value = _underlying.lookup(variable);
+    return (value != NOT_FOUND ? value : lookupIndexed(_underlying, variable));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Looks up an indexed variable, such as 'ids0' or 'rows0.id'.
+   * <p>
+   * Where the list name itself ends in digits, each possible split of the digits is tried.
+   * A collection that is not a {@code List}, such as a {@code Set}, is rejected rather than
+   * treated as not found, as its elements have no index.
+   * 
+   * @param params  the parameters containing the list, not null
+   * @param variable  the indexed variable, not null
+   * @return the element or property, {@link SqlParams#NOT_FOUND} if not found
+   * @throws IllegalArgumentException if the list is a collection that is not a {@code List}
+   */
+  static Object lookupIndexed(SqlParams params, String variable) {
+    int dot = variable.indexOf('.');
+    int end = (dot < 0 ? variable.length() : dot);
+    int start = end;
+    while (start > 1 && end - start < 9 && Character.isDigit(variable.charAt(start - 1))) {
+      start--;
+    }
+    for (int split = start; split < end; split++) {
+      Object list = params.lookup(variable.substring(0, split));
+      if (list instanceof List || (list != null && list.getClass().isArray())) {
+        Object element = element(list, Integer.parseInt(variable.substring(split, end)));
+        if (element != NOT_FOUND) {
+          return (dot < 0 ? element : property(element, variable.substring(dot + 1)));
+        }
+      } else if (list instanceof Collection) {
+        throw new IllegalArgumentException(
+            "Indexed variable requires a List or array, but was " + list.getClass().getName() + ": " + variable);
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  // gets the element of a list or array
+  private static Object element(Object list, int index) {
+    if (list instanceof List) {
+      List<?> coll = (List<?>) list;
+      return (index < coll.size() ? coll.get(index) : NOT_FOUND);
+    }
+    return (index < Array.getLength(list) ? Array.get(list, index) : NOT_FOUND);
+  }
+
+  // gets the property of an element
+  private static Object property(Object element, String name) {
+    if (element instanceof SqlParams) {
+      return ((SqlParams) element).lookup(name);
+    }
+    if (element instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) element;
+      Object value = map.get(name);
+      return (value == null && map.containsKey(name) == false ? NOT_FOUND : value);
+    }
+    if (element == null || name.isEmpty()) {
+      return NOT_FOUND;
+    }
+    Class<?> type = element.getClass();
+    Optional<Method> getter = GETTERS.get(type).computeIfAbsent(name, key -> findGetter(type, key));
+    if (getter.isPresent() == false) {
+      return NOT_FOUND;
+    }
+    try {
+      return getter.get().invoke(element);
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalArgumentException("Unable to read property '" + name + "' of " + type, ex);
+    }
+  }
+
+  // finds the public getter of a property, called once per class and property
+  private static Optional<Method> findGetter(Class<?> type, String name) {
+    String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    for (String prefix : new String[] {"get", "is"}) {
+      try {
+        return Optional.of(type.getMethod(prefix + suffix));
+      } catch (NoSuchMethodException ex) {
+        // try next prefix
+      }
+    }
+    return Optional.empty();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "IndexedSqlParams[" + _underlying + "]";
+  }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Representation of KEYSET(column variable, ...).
+ * <p>
+ * This outputs a predicate selecting the rows after the last seen key,
+ * allowing paging without an offset.
+ */
+final class KeysetSqlFragment extends SqlFragment {
+
+  /**
+   * The key columns, in sort order.
+   */
+  private final List<String> _columns;
+  /**
+   * The variables holding the last seen key values (starting with a colon).
+   */
+  private final List<String> _variables;
+  /**
+   * Whether each column is sorted descending.
+   */
+  private final List<Boolean> _descending;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param columns  the key columns, not null
+   * @param variables  the variables holding the last seen key values, not null
+   * @param descending  whether each column is sorted descending, not null
+   */
+  KeysetSqlFragment(List<String> columns, List<String> variables, List<Boolean> descending) {
+    if (columns.isEmpty() || columns.size() != variables.size() || columns.size() != descending.size()) {
+      throw new IllegalArgumentException("Keyset columns and variables must match");
+    }
+    _columns = Collections.unmodifiableList(new ArrayList<String>(columns));
+    _variables = Collections.unmodifiableList(new ArrayList<String>(variables));
+    _descending = Collections.unmodifiableList(new ArrayList<Boolean>(descending));
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    buf.append(fragments.getConfig().getKeyset(_columns, _variables, _descending));
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + ":" + _columns;
+  }
+
+}
@@ -5,12 +5,18 @@
  */
 package com.opengamma.elsql;
 
+import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Representation of a loop.
  * <p>
  * This loops over the children a number of times.
+ * The size variable may be a number, or a list or array to loop over each element.
+ * Other collections, such as a {@code Set}, are rejected as their elements cannot be indexed.
+ * When looping over a list, variables such as ':ids@LOOPINDEX' or ':{rows@LOOPINDEX.id}'
+ * resolve to the element, or property of the element, at the loop index.
  */
 final class LoopSqlFragment extends ContainerSqlFragment {
 
@@ -31,14 +37,18 @@ final class LoopSqlFragment extends ContainerSqlFragment {
   //-------------------------------------------------------------------------
   @Override
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
-    // find loop size
-    int size = extractSize(params);
+    // find loop size, resolving indexed variables if looping over a list
+    Object sizeObj = lookupSize(params);
+    int size = extractSize(sizeObj);
+    SqlParams childParams = (sizeObj instanceof List || sizeObj.getClass().isArray())
+        ? IndexedSqlParams.of(params)
+        : params;
     // loop
     int[] childLoopIndex = Arrays.copyOf(loopIndex, loopIndex.length + 1);
     for (int i = 0; i < size; i++) {
       StringBuilder part = new StringBuilder();
       childLoopIndex[childLoopIndex.length - 1] = i;
-      super.toSQL(part, fragments, params, childLoopIndex);
+      super.toSQL(part, fragments, childParams, childLoopIndex);
       int joinIndex = part.indexOf("@LOOPJOIN ");
       if (joinIndex >= 0) {
         if (i >= (size - 1)) {
@@ -51,21 +61,31 @@ final class LoopSqlFragment extends ContainerSqlFragment {
     }
   }
 
-  private int extractSize(SqlParams params) {
+  private Object lookupSize(SqlParams params) {
     if (_sizeVariable.startsWith(":")) {
       String var = extractVariableName(_sizeVariable);
-      Object sizeObj = params.get(var);
-      if (sizeObj instanceof Number) {
-        return ((Number) sizeObj).intValue();
-      } else if (sizeObj instanceof String) {
-        return Integer.parseInt((String) sizeObj);
-      } else if (sizeObj == null) {
+      Object sizeObj = params.lookup(var);
+      if (sizeObj == null || sizeObj == SqlParams.NOT_FOUND) {
         throw new IllegalArgumentException("Loop size variable not found: " + var);
-      } else {
-        throw new IllegalArgumentException("Loop size variable must be Number or String: " + var);
       }
+      return sizeObj;
     } else {
-      return Integer.parseInt(_sizeVariable);
+      return _sizeVariable;
+    }
+  }
+
+  private int extractSize(Object sizeObj) {
+    if (sizeObj instanceof Number) {
+      return ((Number) sizeObj).intValue();
+    } else if (sizeObj instanceof String) {
+      return Integer.parseInt((String) sizeObj);
+    } else if (sizeObj instanceof List) {
+      return ((List<?>) sizeObj).size();
+    } else if (sizeObj.getClass().isArray()) {
+      return Array.getLength(sizeObj);
+    } else {
+      throw new IllegalArgumentException(
+          "Loop size variable must be Number, String, List or array: " + _sizeVariable);
     }
   }
 
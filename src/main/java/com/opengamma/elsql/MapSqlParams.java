@@ -41,11 +41,23 @@ public final class MapSqlParams implements SqlParams {
     _map = Collections.singletonMap(key, value);
   }
 
+  /**
+   * Creates a builder, used to create an instance from many key-value pairs.
+   * <p>
+   * The builder avoids the map copy performed by {@link #with(String, Object)}.
+   * 
+   * @return the builder, not null
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
   //-------------------------------------------------------------------------
   /**
    * Returns a new instance with the specified key-value pair added.
    * <p>
    * This copies the internal map and calls {@link Map#put(Object, Object)}.
+   * When adding many pairs, use {@link #builder()} instead.
    * 
    * @param key  the key to add
    * @param value  the value to add
@@ -68,4 +80,70 @@ public final class MapSqlParams implements SqlParams {
     return _map.get(variable);
   }
 
+  @Override
+  public Object lookup(String variable) {
+    Object value = _map.get(variable);
+    if (value == null && _map.containsKey(variable) == false) {
+      return NOT_FOUND;
+    }
+    return value;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Builder for {@code MapSqlParams}.
+   * <p>
+   * This class is mutable and intended for use by a single thread.
+   */
+  public static final class Builder {
+
+    /**
+     * The map being built.
+     */
+    private final Map<String, Object> _map = new HashMap<String, Object>();
+
+    /**
+     * Creates an instance.
+     */
+    private Builder() {
+    }
+
+    /**
+     * Adds a key-value pair, replacing any existing value for the key.
+     * 
+     * @param key  the key to add
+     * @param value  the value to add
+     * @return this builder, for chaining
+     */
+    public Builder with(String key, Object value) {
+      _map.put(key, value);
+      return this;
+    }
+
+    /**
+     * Adds all the key-value pairs in the map, replacing any existing values.
+     * 
+     * @param map  the map to add, not null
+     * @return this builder, for chaining
+     */
+    public Builder withAll(Map<String, ?> map) {
+      if (map == null) {
+        throw new IllegalArgumentException("Map must not be null");
+      }
+      _map.putAll(map);
+      return this;
+    }
+
+    /**
+     * Builds the immutable params.
+     * <p>
+     * The builder may continue to be used after this method is called.
+     * 
+     * @return the params, not null
+     */
+    public MapSqlParams build() {
+      return new MapSqlParams(Collections.unmodifiableMap(new HashMap<String, Object>(_map)));
+    }
+  }
+
 }
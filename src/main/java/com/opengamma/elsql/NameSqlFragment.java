@@ -31,6 +31,11 @@ final class NameSqlFragment extends ContainerSqlFragment {
     return _name;
   }
 
+  @Override
+  SqlRenderer compile(SqlCompiler compiler) {
+    return compiler.compileChildren(this);
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public String toString() {
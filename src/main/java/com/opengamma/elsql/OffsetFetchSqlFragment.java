@@ -47,7 +47,13 @@ final class OffsetFetchSqlFragment extends ContainerSqlFragment {
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
     int offset = extractVariableOrLiteral(params, _offsetVariable);
     int fetchLimit = extractVariableOrLiteral(params, _fetchVariable);
-    buf.append(fragments.getConfig().getPaging(offset, fetchLimit == Integer.MAX_VALUE ? 0 : fetchLimit));
+    fetchLimit = (fetchLimit == Integer.MAX_VALUE ? 0 : fetchLimit);
+    ElSqlConfig config = fragments.getConfig();
+    if (config.isBindPaging()) {
+      buf.append(config.getBindPaging(offset, fetchLimit, _offsetVariable, _fetchVariable));
+    } else {
+      buf.append(config.getPagingCached(offset, fetchLimit));
+    }
   }
 
   //-------------------------------------------------------------------------
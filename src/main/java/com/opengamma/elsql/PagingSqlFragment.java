@@ -7,6 +7,10 @@ package com.opengamma.elsql;
 
 /**
  * Representation of paging over an SQL clause.
+ * <p>
+ * The enclosed block is paged if it starts with 'SELECT '.
+ * When counting rows, the enclosed block must start with 'SELECT ', as other forms,
+ * such as a block starting with WITH or a comment, cannot be reliably converted.
  */
 final class PagingSqlFragment extends ContainerSqlFragment {
 
@@ -35,25 +39,50 @@ final class PagingSqlFragment extends ContainerSqlFragment {
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
     int oldLen = buf.length();
     super.toSQL(buf, fragments, params, loopIndex);
-    int newLen = buf.length();
-    String select = buf.substring(oldLen, newLen);
-    if (select.startsWith("SELECT ")) {
+    if (fragments.isCount()) {
+      if (startsWith(buf, oldLen, "SELECT ") == false) {
+        throw new IllegalArgumentException(
+            "@PAGING block must start with SELECT to be counted: " + buf.substring(oldLen));
+      }
+      String select = buf.substring(oldLen);
       buf.setLength(oldLen);
-      buf.append(applyPaging(select, fragments, params));
+      buf.append(fragments.getConfig().addCount(select));
+    } else if (startsWith(buf, oldLen, "SELECT ")) {
+      applyPaging(buf, oldLen, fragments, params);
     }
   }
 
   /**
    * Applies the paging.
    * 
-   * @param selectToPage  the contents of the enclosed block, not null
+   * @param buf  the buffer containing the contents of the enclosed block, not null
+   * @param selectStart  the index of the enclosed block in the buffer
    * @param fragments  the SQL fragments for context, not null
    * @param params  the SQL arguments, not null
    */
-  String applyPaging(String selectToPage, SqlFragments fragments, SqlParams params) {
+  void applyPaging(StringBuilder buf, int selectStart, SqlFragments fragments, SqlParams params) {
     int offset = extractVariableOrLiteral(params, _offsetVariable);
     int fetchLimit = extractVariableOrLiteral(params, _fetchVariable);
-    return fragments.getConfig().addPaging(selectToPage, offset, fetchLimit == Integer.MAX_VALUE ? 0 : fetchLimit);
+    fetchLimit = (fetchLimit == Integer.MAX_VALUE ? 0 : fetchLimit);
+    ElSqlConfig config = fragments.getConfig();
+    if (config.isBindPaging()) {
+      config.appendBindPaging(buf, selectStart, offset, fetchLimit, _offsetVariable, _fetchVariable);
+    } else {
+      config.appendPaging(buf, selectStart, offset, fetchLimit);
+    }
+  }
+
+  // checks if the buffer contains the text at the index
+  private static boolean startsWith(StringBuilder buf, int index, String text) {
+    if (buf.length() - index < text.length()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (buf.charAt(index + i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   //-------------------------------------------------------------------------
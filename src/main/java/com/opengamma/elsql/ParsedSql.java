@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * SQL with colon-prefixed named variables converted to positional JDBC markers.
+ * <p>
+ * The SQL output by elsql refers to variables by name, such as ':foo' or ':{foo}'.
+ * This class converts the SQL to use positional markers, such as '?' or '$1',
+ * and records the variable name of each marker.
+ * Quoted text, quoted identifiers and the Postgres '::' cast are not treated as variables.
+ * A marker directly within 'ANY(...)' or 'UNNEST(...)', as output by the IN tag,
+ * is recorded as binding an array.
+ * <p>
+ * This class is immutable and thread-safe.
+ */
+final class ParsedSql {
+
+  /**
+   * The SQL with positional markers.
+   */
+  private final String _sql;
+  /**
+   * The variable names, one for each marker.
+   */
+  private final List<String> _names;
+  /**
+   * The markers that bind an array, by index.
+   */
+  private final BitSet _arrays;
+
+  /**
+   * Parses SQL containing named variables, using '?' as the marker.
+   * 
+   * @param namedSql  the SQL containing named variables, not null
+   * @return the parsed SQL, not null
+   */
+  static ParsedSql parse(String namedSql) {
+    return parse(namedSql, index -> "?");
+  }
+
+  /**
+   * Parses SQL containing named variables, specifying the marker.
+   * 
+   * @param namedSql  the SQL containing named variables, not null
+   * @param markers  the function to obtain the marker from the zero-based index, not null
+   * @return the parsed SQL, not null
+   */
+  static ParsedSql parse(String namedSql, IntFunction<String> markers) {
+    List<String> names = new ArrayList<String>();
+    BitSet arrays = new BitSet();
+    String sql = replaceVariables(namedSql, (name, before) -> {
+      String marker = markers.apply(names.size());
+      arrays.set(names.size(), isArrayMarker(before));
+      names.add(name);
+      return marker;
+    });
+    return new ParsedSql(sql, names, arrays);
+  }
+
+  /**
+   * Replaces the named variables in SQL.
+   * <p>
+   * The function is passed the name of each variable, without the colon or braces,
+   * and returns the replacement text, or null to retain the variable unaltered.
+   * 
+   * @param namedSql  the SQL containing named variables, not null
+   * @param replacer  the function to obtain the replacement text, not null
+   * @return the SQL with variables replaced, not null
+   */
+  static String replaceVariables(String namedSql, Function<String, String> replacer) {
+    return replaceVariables(namedSql, (name, before) -> replacer.apply(name));
+  }
+
+  // replaces the named variables, passing the function the name and the output so far
+  private static String replaceVariables(String namedSql, BiFunction<String, CharSequence, String> replacer) {
+    StringBuilder buf = new StringBuilder(namedSql.length());
+    int len = namedSql.length();
+    int i = 0;
+    while (i < len) {
+      char ch = namedSql.charAt(i);
+      if (ch == '\'' || ch == '"') {
+        int end = namedSql.indexOf(ch, i + 1);
+        end = (end < 0 ? len : end + 1);
+        buf.append(namedSql, i, end);
+        i = end;
+      } else if (ch == ':' && i + 1 < len && namedSql.charAt(i + 1) == ':') {
+        buf.append("::");
+        i += 2;
+      } else if (ch == ':' && i + 1 < len) {
+        int end = variableEnd(namedSql, i + 1);
+        if (end > i + 1) {
+          String replacement = replacer.apply(SqlFragment.extractVariableName(namedSql.substring(i, end)), buf);
+          if (replacement != null) {
+            buf.append(replacement);
+          } else {
+            buf.append(namedSql, i, end);
+          }
+          i = end;
+        } else {
+          buf.append(ch);
+          i++;
+        }
+      } else {
+        buf.append(ch);
+        i++;
+      }
+    }
+    return buf.toString();
+  }
+
+  // finds the end of the variable starting at the specified index, returning the start index if none
+  private static int variableEnd(String sql, int start) {
+    int i = start;
+    if (sql.charAt(i) == '$' && i + 1 < sql.length() && sql.charAt(i + 1) == '{') {
+      i++;
+    }
+    if (sql.charAt(i) == '{') {
+      int end = sql.indexOf('}', i);
+      return (end < 0 ? start : end + 1);
+    }
+    while (i < sql.length() && isIdentifierChar(sql.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  // checks if the text before a variable ends with 'ANY(' or 'UNNEST(', ignoring case and whitespace
+  private static boolean isArrayMarker(CharSequence before) {
+    int end = before.length();
+    while (end > 0 && Character.isWhitespace(before.charAt(end - 1))) {
+      end--;
+    }
+    if (end == 0 || before.charAt(end - 1) != '(') {
+      return false;
+    }
+    end--;
+    while (end > 0 && Character.isWhitespace(before.charAt(end - 1))) {
+      end--;
+    }
+    int start = end;
+    while (start > 0 && isIdentifierChar(before.charAt(start - 1))) {
+      start--;
+    }
+    String word = before.subSequence(start, end).toString();
+    return word.equalsIgnoreCase("ANY") || word.equalsIgnoreCase("UNNEST");
+  }
+
+  // checks if the character is valid in a simple variable name
+  private static boolean isIdentifierChar(char ch) {
+    return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9') || ch == '_';
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates an instance.
+   * 
+   * @param sql  the SQL with positional markers, not null
+   * @param names  the variable names, not null
+   * @param arrays  the markers that bind an array, not null
+   */
+  private ParsedSql(String sql, List<String> names, BitSet arrays) {
+    _sql = sql;
+    _names = Collections.unmodifiableList(names);
+    _arrays = arrays;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the SQL with positional markers.
+   * 
+   * @return the SQL, not null
+   */
+  String getSql() {
+    return _sql;
+  }
+
+  /**
+   * Gets the variable names, one for each marker in order.
+   * 
+   * @return the names, not null
+   */
+  List<String> getNames() {
+    return _names;
+  }
+
+  /**
+   * Checks if the marker binds an array, as used by '= ANY(:ids)' on Postgres.
+   * 
+   * @param index  the zero-based index of the marker
+   * @return true if the marker is directly within 'ANY(...)' or 'UNNEST(...)'
+   */
+  boolean isArray(int index) {
+    return _arrays.get(index);
+  }
+
+  /**
+   * Checks if any marker binds an array.
+   * 
+   * @return true if at least one marker is directly within 'ANY(...)' or 'UNNEST(...)'
+   */
+  boolean isAnyArray() {
+    return _arrays.isEmpty() == false;
+  }
+
+  /**
+   * Gets the values to bind, one for each marker in order.
+   * <p>
+   * Indexed variables output by a loop over a list, such as 'ids0', are resolved to the element.
+   * 
+   * @param params  the SQL parameters, not null
+   * @return the values, not null
+   * @throws IllegalArgumentException if a variable is not found
+   */
+  Object[] getValues(SqlParams params) {
+    Object[] values = new Object[_names.size()];
+    for (int i = 0; i < values.length; i++) {
+      String name = _names.get(i);
+      Object value = params.lookup(name);
+      if (value == SqlParams.NOT_FOUND) {
+        value = IndexedSqlParams.lookupIndexed(params, name);
+      }
+      if (value == SqlParams.NOT_FOUND) {
+        throw new IllegalArgumentException("No value found for SQL variable: " + name);
+      }
+      values[i] = value;
+    }
+    return values;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return _sql;
+  }
+
+}
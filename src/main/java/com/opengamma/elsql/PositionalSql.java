@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SQL using positional bind markers, together with the values to bind.
+ * <p>
+ * This is the output of {@link ElSql#getPositionalSql(String, SqlParams)}.
+ * The markers are chosen by {@link ElSqlConfig#getBindMarker(int)}, such as '$1' for Postgres.
+ * The values are in marker order, so that the value at index zero binds to the first marker.
+ * This matches the zero-based index used by R2DBC {@code Statement.bind(int, Object)}.
+ * <p>
+ * Values may be null, in which case the caller must bind a null of the appropriate type.
+ * <p>
+ * This class is immutable and thread-safe if the values are.
+ */
+public final class PositionalSql {
+
+  /**
+   * The SQL.
+   */
+  private final String _sql;
+  /**
+   * The variable names, one for each marker.
+   */
+  private final List<String> _names;
+  /**
+   * The values, one for each marker.
+   */
+  private final List<Object> _values;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param sql  the SQL with positional markers, not null
+   * @param names  the variable names, not null
+   * @param values  the values, not null
+   */
+  PositionalSql(String sql, List<String> names, Object[] values) {
+    _sql = sql;
+    _names = names;
+    _values = Collections.unmodifiableList(Arrays.asList(values));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the SQL with positional markers.
+   * 
+   * @return the SQL, not null
+   */
+  public String getSql() {
+    return _sql;
+  }
+
+  /**
+   * Gets the variable names, one for each marker in order.
+   * 
+   * @return the unmodifiable list of names, not null
+   */
+  public List<String> getNames() {
+    return _names;
+  }
+
+  /**
+   * Gets the values to bind, one for each marker in order.
+   * 
+   * @return the unmodifiable list of values, which may contain nulls, not null
+   */
+  public List<Object> getValues() {
+    return _values;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return _sql;
+  }
+
+}
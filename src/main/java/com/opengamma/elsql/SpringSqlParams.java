@@ -5,6 +5,9 @@
  */
 package com.opengamma.elsql;
 
+import java.util.Map;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
 /**
@@ -18,6 +21,10 @@ public final class SpringSqlParams implements SqlParams {
    * The source.
    */
   private final SqlParameterSource _source;
+  /**
+   * The backing map, used to lookup in a single operation, null if not map-based.
+   */
+  private final Map<String, Object> _map;
 
   /**
    * Creates an instance based on a source.
@@ -29,6 +36,7 @@ public final class SpringSqlParams implements SqlParams {
       throw new IllegalArgumentException("Source must not be null");
     }
     _source = source;
+    _map = (source instanceof MapSqlParameterSource ? ((MapSqlParameterSource) source).getValues() : null);
   }
 
   //-------------------------------------------------------------------------
@@ -39,7 +47,20 @@ public final class SpringSqlParams implements SqlParams {
 
   @Override
   public Object get(String variable) {
-    return (_source.hasValue(variable) ? _source.getValue(variable) : null);
+    Object value = lookup(variable);
+    return (value == NOT_FOUND ? null : value);
+  }
+
+  @Override
+  public Object lookup(String variable) {
+    if (_map != null) {
+      Object value = _map.get(variable);
+      if (value == null && _map.containsKey(variable) == false) {
+        return NOT_FOUND;
+      }
+      return value;
+    }
+    return (_source.hasValue(variable) ? _source.getValue(variable) : NOT_FOUND);
   }
 
 }
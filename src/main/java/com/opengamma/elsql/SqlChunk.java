@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single statement from a named fragment that has been split into chunks.
+ * <p>
+ * A named fragment containing a VALUES tag is split into one statement for each
+ * chunk of rows, see {@link ElSql#getChunkedSql(String, SqlParams)}.
+ * Each chunk has the SQL and the parameters needed to execute it.
+ * <p>
+ * This class is immutable and thread-safe if the parameters are.
+ */
+public final class SqlChunk {
+
+  /**
+   * The SQL.
+   */
+  private final String _sql;
+  /**
+   * The parameters.
+   */
+  private final ValuesSqlParams _params;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param sql  the SQL, not null
+   * @param params  the parameters of the chunk, not null
+   */
+  SqlChunk(String sql, ValuesSqlParams params) {
+    _sql = sql;
+    _params = params;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the SQL of the chunk.
+   * <p>
+   * Full chunks of a named fragment have the same SQL when the rows output the same variables,
+   * as row variables are named using the index of the row within the chunk.
+   * 
+   * @return the SQL, not null
+   */
+  public String getSql() {
+    return _sql;
+  }
+
+  /**
+   * Gets the parameters of the chunk.
+   * <p>
+   * These resolve the row variables of the chunk, such as 'rows_3_id',
+   * falling back to the parameters used to obtain the chunk.
+   * 
+   * @return the parameters, not null
+   */
+  public SqlParams getParams() {
+    return _params;
+  }
+
+  /**
+   * Gets the number of rows in the chunk.
+   * 
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return _params.getSize();
+  }
+
+  /**
+   * Gets the values of the row variables in the SQL.
+   * <p>
+   * This is intended for use with APIs that cannot accept {@link SqlParams},
+   * such as Spring, where the values must be added to the other parameters.
+   * 
+   * @return the map of row variable name to value, not null
+   */
+  public Map<String, Object> getRowValues() {
+    Map<String, Object> values = new LinkedHashMap<String, Object>();
+    String prefix = _params.getVariable() + "_";
+    for (String name : ParsedSql.parse(_sql).getNames()) {
+      if (name.startsWith(prefix)) {
+        Object value = _params.lookup(name);
+        if (value != SqlParams.NOT_FOUND) {
+          values.put(name, value);
+        }
+      }
+    }
+    return Collections.unmodifiableMap(values);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return _sql;
+  }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles named fragments to renderers, as an alternative to interpreting the fragments.
+ * <p>
+ * Each fragment is compiled to a tree of closures, see {@link SqlFragment#compile(SqlCompiler)}.
+ * Literal text is captured as a constant, with adjacent constants merged into one,
+ * conditional tags become a direct test of the variable, and a static include is replaced
+ * by the compiled form of the included fragment, so that included literal text is merged too.
+ * A block that only consists of literal text compiles to a single constant.
+ * Tags that have no compiled form, such as PAGING, are rendered by the fragment itself.
+ * <p>
+ * The compiled form depends on the links of the bundle, but not on the config,
+ * thus it can be shared by all copies of a bundle.
+ * <p>
+ * This class is not thread-safe, and is used for a single compilation.
+ */
+final class SqlCompiler {
+
+  /**
+   * The renderer that outputs nothing.
+   */
+  private static final SqlRenderer EMPTY = new ConstantRenderer("");
+
+  /**
+   * The fragments being compiled.
+   */
+  private final SqlFragments _fragments;
+  /**
+   * The named fragments already compiled.
+   */
+  private final Map<NameSqlFragment, SqlRenderer> _compiled = new HashMap<NameSqlFragment, SqlRenderer>();
+
+  /**
+   * Creates an instance.
+   * 
+   * @param fragments  the fragments being compiled, not null
+   */
+  SqlCompiler(SqlFragments fragments) {
+    _fragments = fragments;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Compiles a named fragment.
+   * <p>
+   * Static includes cannot be cyclic, so the recursion through them terminates.
+   * 
+   * @param fragment  the fragment to compile, not null
+   * @return the renderer, not null
+   */
+  SqlRenderer compileNamed(NameSqlFragment fragment) {
+    SqlRenderer renderer = _compiled.get(fragment);
+    if (renderer == null) {
+      renderer = fragment.compile(this);
+      _compiled.put(fragment, renderer);
+    }
+    return renderer;
+  }
+
+  /**
+   * Compiles a static include.
+   * 
+   * @param include  the include, not null
+   * @return the renderer, not null
+   */
+  SqlRenderer compileInclude(IncludeSqlFragment include) {
+    NameSqlFragment target = _fragments.getLinkedFragment(include);
+    return compileNamed(target != null ? target : _fragments.getFragment(include.getIncludeKey()));
+  }
+
+  /**
+   * Compiles the children of a container, to be rendered in order.
+   * 
+   * @param container  the container, not null
+   * @return the renderer, not null
+   */
+  SqlRenderer compileChildren(ContainerSqlFragment container) {
+    List<SqlRenderer> renderers = new ArrayList<SqlRenderer>();
+    for (SqlFragment child : container.getFragments()) {
+      SqlRenderer renderer = child.compile(this);
+      int last = renderers.size() - 1;
+      if (renderer instanceof ConstantRenderer && last >= 0 && renderers.get(last) instanceof ConstantRenderer) {
+        renderers.set(last, ((ConstantRenderer) renderers.get(last)).merge((ConstantRenderer) renderer));
+      } else if (renderer != EMPTY) {
+        renderers.add(renderer);
+      }
+    }
+    switch (renderers.size()) {
+      case 0:
+        return EMPTY;
+      case 1:
+        return renderers.get(0);
+      case 2: {
+        SqlRenderer first = renderers.get(0);
+        SqlRenderer second = renderers.get(1);
+        return (buf, fragments, params, loopIndex) -> {
+          first.render(buf, fragments, params, loopIndex);
+          second.render(buf, fragments, params, loopIndex);
+        };
+      }
+      default: {
+        SqlRenderer[] array = renderers.toArray(new SqlRenderer[renderers.size()]);
+        return (buf, fragments, params, loopIndex) -> {
+          for (SqlRenderer renderer : array) {
+            renderer.render(buf, fragments, params, loopIndex);
+          }
+        };
+      }
+    }
+  }
+
+  /**
+   * Compiles literal text.
+   * 
+   * @param text  the text, not null
+   * @return the renderer, not null
+   */
+  static SqlRenderer compileText(String text) {
+    return (text.isEmpty() ? EMPTY : new ConstantRenderer(text));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Renders a constant.
+   */
+  private static final class ConstantRenderer implements SqlRenderer {
+    private final String _text;
+
+    ConstantRenderer(String text) {
+      _text = text;
+    }
+
+    ConstantRenderer merge(ConstantRenderer other) {
+      return new ConstantRenderer(_text + other._text);
+    }
+
+    @Override
+    public void render(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+      buf.append(_text);
+    }
+  }
+
+}
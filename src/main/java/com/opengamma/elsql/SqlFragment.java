@@ -20,6 +20,18 @@ abstract class SqlFragment {
    */
   abstract void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex);
 
+  /**
+   * Compiles this fragment to a renderer.
+   * <p>
+   * The default implementation renders using {@link #toSQL(StringBuilder, SqlFragments, SqlParams, int[])}.
+   * 
+   * @param compiler  the compiler, not null
+   * @return the renderer, not null
+   */
+  SqlRenderer compile(SqlCompiler compiler) {
+    return this::toSQL;
+  }
+
   /**
    * Applies the loop index to the string.
    * 
@@ -71,8 +83,9 @@ abstract class SqlFragment {
     if (str != null) {
       if (str.startsWith(":") && str.length() > 1) {
         String fetchVariableName = extractVariableName(str);
-        if (params.contains(fetchVariableName)) {
-          return ((Number) params.get(fetchVariableName)).intValue();
+        Object value = params.lookup(fetchVariableName);
+        if (value != SqlParams.NOT_FOUND) {
+          return ((Number) value).intValue();
         }
       } else if (str.matches("[0-9]+")) {
         return Integer.parseInt(str);
@@ -12,9 +12,17 @@ import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The map of SQL fragments
@@ -24,36 +32,59 @@ import java.util.Map;
 final class SqlFragments {
 
   /**
-   * An empty array.
+   * The loop index used outside a loop.
    */
-  private static final int[] NO_LOOP = new int[] {-1};
+  static final int[] NO_LOOP = new int[] {-1};
 
   /**
    * The map of known elsql.
    */
   private final Map<String, NameSqlFragment> _map;
+  /**
+   * The fragments included by each static include, keyed by identity.
+   * The include fragments may be shared between bundles, so the links are held here.
+   */
+  private final Map<IncludeSqlFragment, NameSqlFragment> _links;
+  /**
+   * The compiled renderers, shared by all copies of the bundle, populated on first use.
+   */
+  private final ConcurrentMap<NameSqlFragment, SqlRenderer> _compiled;
   /**
    * The config.
    */
   private final ElSqlConfig _config;
+  /**
+   * The listener, null if none.
+   */
+  private final ElSqlListener _listener;
+  /**
+   * Whether paging blocks are output as a count of the rows.
+   */
+  private final boolean _count;
+  /**
+   * The equivalent fragments that output paging blocks as a count of the rows.
+   */
+  private final SqlFragments _countFragments;
 
   //-------------------------------------------------------------------------
   // parse a set of resources, where names in later resources override names in earlier ones
   // throws an IllegalArgumentException when none of the resources exists
   static SqlFragments parseResource(URL[] resources, ElSqlConfig config) {
     List<List<String>> files = new ArrayList<List<String>>();
+    List<String> sources = new ArrayList<String>();
     boolean resourceFound = false;
     for (URL resource : resources) {
       if (resource != null) {
         resourceFound = true;
         List<String> lines = loadResource(resource);
         files.add(lines);
+        sources.add(resource.toString());
       }
     }
     if (!resourceFound) {
       throw new IllegalArgumentException("No matching resource was found");
     }
-    return parse(files, config);
+    return parse(files, sources, config);
   }
 
   // convert a resource to a list of lines
@@ -81,12 +112,99 @@ final class SqlFragments {
 
   // parse the files
   static SqlFragments parse(List<List<String>> files, ElSqlConfig config) {
-    Map<String, NameSqlFragment> parsed = new LinkedHashMap<String, NameSqlFragment>();
-    for (List<String> lines : files) {
-      ElSqlParser parser = new ElSqlParser(lines);
-      parsed.putAll(parser.parse());
+    return parse(files, null, config);
+  }
+
+  // parse the files, with the sources used for profiling
+  static SqlFragments parse(List<List<String>> files, List<String> sources, ElSqlConfig config) {
+    List<Map<String, NameSqlFragment>> layers = new ArrayList<Map<String, NameSqlFragment>>();
+    for (int i = 0; i < files.size(); i++) {
+      layers.add(parseLayer(files.get(i), (sources != null ? sources.get(i) : ""), null, config.isCanonicalText()));
     }
-    return new SqlFragments(parsed, config);
+    return merge(layers, config);
+  }
+
+  // parse a single file to a layer of named fragments
+  static Map<String, NameSqlFragment> parseLayer(List<String> lines, String source) {
+    return parseLayer(lines, source, null);
+  }
+
+  // parse a single file to a layer of named fragments, qualifying the names if a library
+  static Map<String, NameSqlFragment> parseLayer(List<String> lines, String source, String namespace) {
+    return parseLayer(lines, source, namespace, false);
+  }
+
+  // parse a single file to a layer of named fragments, optionally canonicalizing literal text
+  static Map<String, NameSqlFragment> parseLayer(
+      List<String> lines, String source, String namespace, boolean canonical) {
+    Object event = ElSqlEvents.INSTANCE.beginParse();
+    ElSqlParser parser = new ElSqlParser(lines, namespace, canonical);
+    Map<String, NameSqlFragment> layer = parser.parse();
+    if (event != null) {
+      ElSqlEvents.INSTANCE.commitParse(event, source, lines.size(), layer.size());
+    }
+    return Collections.unmodifiableMap(layer);
+  }
+
+  // merge layers, where names in later layers override names in earlier ones
+  // the fragments are immutable, so layers can be shared between bundles
+  // throws an IllegalArgumentException if a static include is unknown or cyclic
+  static SqlFragments merge(List<Map<String, NameSqlFragment>> layers, ElSqlConfig config) {
+    Map<String, NameSqlFragment> merged = new LinkedHashMap<String, NameSqlFragment>();
+    for (Map<String, NameSqlFragment> layer : layers) {
+      merged.putAll(layer);
+    }
+    return new SqlFragments(merged, link(merged), null, config, null);
+  }
+
+  // links the static includes to the fragments they refer to, checking for cycles
+  private static Map<IncludeSqlFragment, NameSqlFragment> link(Map<String, NameSqlFragment> map) {
+    Map<IncludeSqlFragment, NameSqlFragment> links = new IdentityHashMap<IncludeSqlFragment, NameSqlFragment>();
+    Map<NameSqlFragment, List<NameSqlFragment>> graph = new HashMap<NameSqlFragment, List<NameSqlFragment>>();
+    for (NameSqlFragment fragment : map.values()) {
+      List<IncludeSqlFragment> includes = new ArrayList<IncludeSqlFragment>();
+      fragment.findFragments(IncludeSqlFragment.class, includes);
+      List<NameSqlFragment> targets = new ArrayList<NameSqlFragment>();
+      for (IncludeSqlFragment include : includes) {
+        if (include.isStatic()) {
+          NameSqlFragment target = include.resolve(map);
+          links.put(include, target);
+          targets.add(target);
+        }
+      }
+      graph.put(fragment, targets);
+    }
+    Set<NameSqlFragment> checked = new HashSet<NameSqlFragment>();
+    for (NameSqlFragment fragment : map.values()) {
+      checkCycles(fragment, graph, checked, new ArrayList<NameSqlFragment>());
+    }
+    return links;
+  }
+
+  // depth-first search of the static includes, where the path holds the fragments being visited
+  private static void checkCycles(
+      NameSqlFragment fragment,
+      Map<NameSqlFragment, List<NameSqlFragment>> graph,
+      Set<NameSqlFragment> checked,
+      List<NameSqlFragment> path) {
+
+    int index = path.indexOf(fragment);
+    if (index >= 0) {
+      StringBuilder buf = new StringBuilder();
+      for (NameSqlFragment visited : path.subList(index, path.size())) {
+        buf.append(visited.getName()).append(" -> ");
+      }
+      throw new IllegalArgumentException("Cyclic @INCLUDE: " + buf + fragment.getName());
+    }
+    if (checked.contains(fragment)) {
+      return;
+    }
+    path.add(fragment);
+    for (NameSqlFragment target : graph.get(fragment)) {
+      checkCycles(target, graph, checked, path);
+    }
+    path.remove(path.size() - 1);
+    checked.add(fragment);
   }
 
   //-------------------------------------------------------------------------
@@ -97,6 +215,24 @@ final class SqlFragments {
    * @param config  the config to use, not null
    */
   SqlFragments(Map<String, NameSqlFragment> map, ElSqlConfig config) {
+    this(map, new IdentityHashMap<IncludeSqlFragment, NameSqlFragment>(), null, config, null);
+  }
+
+  /**
+   * Creates an instance with links and a listener.
+   * 
+   * @param map  the map of names, not null
+   * @param links  the fragments included by static includes, not null
+   * @param compiled  the compiled renderers, null to create
+   * @param config  the config to use, not null
+   * @param listener  the listener, null if none
+   */
+  private SqlFragments(
+      Map<String, NameSqlFragment> map,
+      Map<IncludeSqlFragment, NameSqlFragment> links,
+      ConcurrentMap<NameSqlFragment, SqlRenderer> compiled,
+      ElSqlConfig config,
+      ElSqlListener listener) {
     if (map == null) {
       throw new IllegalArgumentException("Fragment map must not be null");
     }
@@ -104,7 +240,27 @@ final class SqlFragments {
       throw new IllegalArgumentException("Config must not be null");
     }
     _map = map;
+    _links = links;
+    _compiled = (compiled != null ? compiled : new ConcurrentHashMap<NameSqlFragment, SqlRenderer>());
     _config = config;
+    _listener = listener;
+    _count = false;
+    _countFragments = new SqlFragments(this);
+  }
+
+  /**
+   * Creates an instance that outputs paging blocks as a count of the rows.
+   * 
+   * @param base  the base fragments, not null
+   */
+  private SqlFragments(SqlFragments base) {
+    _map = base._map;
+    _links = base._links;
+    _compiled = base._compiled;
+    _config = base._config;
+    _listener = base._listener;
+    _count = true;
+    _countFragments = this;
   }
 
   //-------------------------------------------------------------------------
@@ -126,7 +282,37 @@ final class SqlFragments {
    * @return a bundle with the config updated, not null
    */
   SqlFragments withConfig(ElSqlConfig config) {
-    return new SqlFragments(_map, config);
+    return new SqlFragments(_map, _links, _compiled, config, _listener);
+  }
+
+  /**
+   * Gets the listener.
+   * 
+   * @return the listener, null if none
+   */
+  ElSqlListener getListener() {
+    return _listener;
+  }
+
+  /**
+   * Returns a copy of this bundle with a different listener.
+   * <p>
+   * This does not reload the underlying resources.
+   * 
+   * @param listener  the new listener, null to remove
+   * @return a bundle with the listener updated, not null
+   */
+  SqlFragments withListener(ElSqlListener listener) {
+    return new SqlFragments(_map, _links, _compiled, _config, listener);
+  }
+
+  /**
+   * Checks whether paging blocks should be output as a count of the rows.
+   * 
+   * @return true if outputting a count
+   */
+  boolean isCount() {
+    return _count;
   }
 
   //-------------------------------------------------------------------------
@@ -142,6 +328,29 @@ final class SqlFragments {
    * @throws RuntimeException if a problem occurs
    */
   String getSql(String name, SqlParams params) {
+    if (name == null) {
+      throw new IllegalArgumentException("Fragment name must not be null");
+    }
+    if (params == null) {
+      throw new IllegalArgumentException("SqlParams must not be null");
+    }
+    return renderInstrumented(name, getFragment(name), this, params);
+  }
+
+  /**
+   * Finds the SQL to count the rows of a named fragment key.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a PAGING tag.
+   * The SQL is derived from the block, replacing the paging with a count of the rows.
+   * 
+   * @param name  the name, not null
+   * @param params  the Spring SQL parameters, not null
+   * @return the SQL, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name,
+   *  if the fragment does not contain a PAGING tag or if the paged block does not start with SELECT
+   * @throws RuntimeException if a problem occurs
+   */
+  String getCountSql(String name, SqlParams params) {
     if (name == null) {
       throw new IllegalArgumentException("Fragment name must not be null");
     }
@@ -149,11 +358,138 @@ final class SqlFragments {
       throw new IllegalArgumentException("SqlParams must not be null");
     }
     NameSqlFragment fragment = getFragment(name);
+    if (findLinkedFragment(fragment, PagingSqlFragment.class) == null) {
+      throw new IllegalArgumentException("Fragment does not contain @PAGING: " + name);
+    }
+    return renderInstrumented(name, fragment, _countFragments, params);
+  }
+
+  /**
+   * Finds SQL for a named fragment key, converting the variables to positional bind markers.
+   * <p>
+   * This finds, processes and returns a named block from the bundle, replacing each
+   * variable with the marker from {@link ElSqlConfig#getBindMarker(int)}.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the SQL and values, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name
+   *  or a variable in the SQL has no value
+   * @throws RuntimeException if a problem occurs
+   */
+  PositionalSql getPositionalSql(String name, SqlParams params) {
+    ParsedSql parsed = ParsedSql.parse(getSql(name, params), _config::getBindMarker);
+    return new PositionalSql(parsed.getSql(), parsed.getNames(), parsed.getValues(params));
+  }
+
+  /**
+   * Finds the SQL of a named fragment key containing a VALUES tag, split into chunks.
+   * <p>
+   * This finds and processes a named block from the bundle that contains a VALUES tag.
+   * The rows of the list variable are split into chunks, each chunk producing one statement.
+   * The number of rows in each chunk is limited by {@link ElSqlConfig#getMaxValuesRows()}
+   * and by the number of bind parameters permitted by {@link ElSqlConfig#getMaxBindParameters()}.
+   * All chunks except the last have the same number of rows.
+   * The SQL of full chunks is the same when the rows output the same variables.
+   * 
+   * @param name  the name, not null
+   * @param params  the SQL parameters, not null
+   * @return the chunks, empty if the list of rows is empty, not null
+   * @throws IllegalArgumentException if there is no fragment with the specified name,
+   *  if the fragment does not contain a VALUES tag or if a single row has too many parameters
+   * @throws RuntimeException if a problem occurs
+   */
+  List<SqlChunk> getChunkedSql(String name, SqlParams params) {
+    if (name == null) {
+      throw new IllegalArgumentException("Fragment name must not be null");
+    }
+    if (params == null) {
+      throw new IllegalArgumentException("SqlParams must not be null");
+    }
+    NameSqlFragment fragment = getFragment(name);
+    ValuesSqlFragment values = findLinkedFragment(fragment, ValuesSqlFragment.class);
+    if (values == null) {
+      throw new IllegalArgumentException("Fragment does not contain @VALUES: " + name);
+    }
+    List<SqlParams> rows = values.extractRows(params);
+    if (rows.isEmpty()) {
+      return Collections.emptyList();
+    }
+    // measure the bind parameters outside the rows by rendering the first row alone
+    // rows may output different variables, so the chunk size uses the largest row
+    String variable = values.getVariable();
+    int firstRow = values.countRowVariables(this, params, rows.subList(0, 1));
+    String oneRow = render(fragment, this, new ValuesSqlParams(params, variable, rows, 0, 1));
+    int outside = ParsedSql.parse(oneRow).getNames().size() - firstRow;
+    int perRow = values.countRowVariables(this, params, rows);
+    int chunkSize = _config.getMaxValuesRows();
+    if (perRow > 0) {
+      chunkSize = Math.min(chunkSize, (_config.getMaxBindParameters() - outside) / perRow);
+    }
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("Fragment has too many bind parameters for a single @VALUES row: " + name);
+    }
+    // render each chunk, sharing the SQL of chunks that are the same
+    List<SqlChunk> chunks = new ArrayList<SqlChunk>();
+    String fullSql = null;
+    for (int start = 0; start < rows.size(); start += chunkSize) {
+      int size = Math.min(chunkSize, rows.size() - start);
+      ValuesSqlParams chunkParams = new ValuesSqlParams(params, variable, rows, start, size);
+      String sql = renderInstrumented(name, fragment, this, chunkParams);
+      if (sql.equals(fullSql)) {
+        sql = fullSql;
+      } else if (fullSql == null) {
+        fullSql = sql;
+      }
+      chunks.add(new SqlChunk(sql, chunkParams));
+    }
+    return chunks;
+  }
+
+  // renders the fragment, notifying the listener and recording an event if enabled
+  private String renderInstrumented(String name, NameSqlFragment fragment, SqlFragments fragments, SqlParams params) {
+    Object event = ElSqlEvents.INSTANCE.beginRender();
+    if (_listener == null && event == null) {
+      return render(fragment, fragments, params);
+    }
+    long start = System.nanoTime();
+    String sql = render(fragment, fragments, params);
+    if (_listener != null) {
+      _listener.renderedShape(name, sql, System.nanoTime() - start);
+    }
+    if (event != null) {
+      ElSqlEvents.INSTANCE.commitRender(event, name, sql);
+    }
+    return sql;
+  }
+
+  // renders the fragment, using the compiled renderer if enabled
+  private static String render(NameSqlFragment fragment, SqlFragments fragments, SqlParams params) {
     StringBuilder buf = new StringBuilder(1024);
-    fragment.toSQL(buf, this, params, NO_LOOP);
+    if (fragments._config.isCompiledRendering()) {
+      fragments.getCompiled(fragment).render(buf, fragments, params, NO_LOOP);
+    } else {
+      fragment.toSQL(buf, fragments, params, NO_LOOP);
+    }
     return buf.toString();
   }
 
+  /**
+   * Gets the compiled renderer of a named fragment, compiling it on first use.
+   * 
+   * @param fragment  the fragment, not null
+   * @return the renderer, not null
+   */
+  SqlRenderer getCompiled(NameSqlFragment fragment) {
+    SqlRenderer renderer = _compiled.get(fragment);
+    if (renderer == null) {
+      renderer = new SqlCompiler(this).compileNamed(fragment);
+      SqlRenderer existing = _compiled.putIfAbsent(fragment, renderer);
+      renderer = (existing != null ? existing : renderer);
+    }
+    return renderer;
+  }
+
   /**
    * Gets a fragment by name.
    * 
@@ -172,4 +508,43 @@ final class SqlFragments {
     return fragment;
   }
 
+  /**
+   * Finds the first fragment of the specified type in a named fragment or the fragments it statically includes.
+   * <p>
+   * The static includes were checked for cycles when this bundle was built, so the search terminates.
+   * 
+   * @param <T>  the type of fragment
+   * @param fragment  the named fragment to search, not null
+   * @param type  the type of fragment to find, not null
+   * @return the fragment, null if not found
+   */
+  private <T extends SqlFragment> T findLinkedFragment(NameSqlFragment fragment, Class<T> type) {
+    T found = fragment.findFragment(type);
+    if (found != null) {
+      return found;
+    }
+    List<IncludeSqlFragment> includes = new ArrayList<IncludeSqlFragment>();
+    fragment.findFragments(IncludeSqlFragment.class, includes);
+    for (IncludeSqlFragment include : includes) {
+      NameSqlFragment linked = getLinkedFragment(include);
+      found = (linked != null ? findLinkedFragment(linked, type) : null);
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the fragment that a static include was linked to when this bundle was built.
+   * <p>
+   * This is an identity lookup, used on each interpreted render and once when compiling.
+   * 
+   * @param include  the include, not null
+   * @return the included fragment, null if not linked
+   */
+  NameSqlFragment getLinkedFragment(IncludeSqlFragment include) {
+    return _links.get(include);
+  }
+
 }
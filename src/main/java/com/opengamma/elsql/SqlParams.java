@@ -12,6 +12,16 @@ package com.opengamma.elsql;
  */
 public interface SqlParams {
 
+  /**
+   * Marker returned by {@link #lookup(String)} when the variable does not exist.
+   */
+  public static final Object NOT_FOUND = new Object() {
+    @Override
+    public String toString() {
+      return "NOT_FOUND";
+    }
+  };
+
   /**
    * Checks whether the variable exists.
    * 
@@ -28,4 +38,19 @@ public interface SqlParams {
    */
   public Object get(String variable);
 
+  /**
+   * Looks up the variable, returning {@link #NOT_FOUND} if it does not exist.
+   * <p>
+   * This combines {@link #contains(String)} and {@link #get(String)} into a single call.
+   * A variable that exists with a null value returns null.
+   * The default implementation calls both methods, implementations should override
+   * where the underlying source can answer in a single operation.
+   * 
+   * @param variable  the variable
+   * @return the value associated with the variable, {@link #NOT_FOUND} if it does not exist
+   */
+  public default Object lookup(String variable) {
+    return contains(variable) ? get(variable) : NOT_FOUND;
+  }
+
 }
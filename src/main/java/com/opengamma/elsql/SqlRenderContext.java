@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The state of a single render that is not part of the immutable fragments.
+ * <p>
+ * The context is bound to the rendering thread for the duration of the render,
+ * allowing the fragments to be shared without being copied or mutated.
+ * The context collects the keys to insert into temporary tables, see {@link ElSqlConfig#getInTempTable(String, String)},
+ * and records whether the SQL will be executed by a caller that binds a list as a SQL array.
+ * <p>
+ * This class is mutable and intended for use on a single thread.
+ */
+final class SqlRenderContext {
+
+  /**
+   * The context of the render in progress on each thread, null if none.
+   */
+  private static final ThreadLocal<SqlRenderContext> CURRENT = new ThreadLocal<SqlRenderContext>();
+
+  /**
+   * The keys to insert into temporary tables, keyed by table name, null if not collecting.
+   */
+  private final Map<String, Object[]> _inTempTables;
+  /**
+   * Whether the caller binds a list as a SQL array.
+   */
+  private final boolean _arrayBinding;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param inTempTables  the map to collect temporary table keys into, null if not collecting
+   * @param arrayBinding  whether the caller binds a list as a SQL array
+   */
+  private SqlRenderContext(Map<String, Object[]> inTempTables, boolean arrayBinding) {
+    _inTempTables = inTempTables;
+    _arrayBinding = arrayBinding;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Renders SQL with a context that collects the keys to insert into temporary tables.
+   * <p>
+   * This is used by {@link ElSqlJdbc}, which fills the temporary tables and binds arrays.
+   * Only the IN tags that are actually output are collected.
+   * Any context already bound to the thread is restored afterwards.
+   * 
+   * @param <T>  the type of the result
+   * @param inTempTables  the map to collect into, keyed by table name, not null
+   * @param render  the render to perform, not null
+   * @return the result of the render, not null
+   */
+  static <T> T render(Map<String, Object[]> inTempTables, Supplier<T> render) {
+    return render(new SqlRenderContext(inTempTables, true), render);
+  }
+
+  /**
+   * Renders SQL with a context that rejects IN tags needing a SQL array or temporary table.
+   * <p>
+   * This is used by {@link ElSqlBundle}, as Spring's {@code NamedParameterJdbcTemplate}
+   * expands a list into one marker per element rather than binding an array.
+   * Any context already bound to the thread is restored afterwards.
+   * 
+   * @param <T>  the type of the result
+   * @param render  the render to perform, not null
+   * @return the result of the render, not null
+   */
+  static <T> T renderWithoutArrays(Supplier<T> render) {
+    return render(new SqlRenderContext(null, false), render);
+  }
+
+  // renders with the context bound to the thread
+  private static <T> T render(SqlRenderContext context, Supplier<T> render) {
+    SqlRenderContext previous = CURRENT.get();
+    CURRENT.set(context);
+    try {
+      return render.get();
+    } finally {
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    }
+  }
+
+  /**
+   * Gets the context of the render in progress on this thread.
+   * 
+   * @return the context, null if none
+   */
+  static SqlRenderContext current() {
+    return CURRENT.get();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Checks whether the keys to insert into temporary tables are collected.
+   * 
+   * @return true if collecting
+   */
+  boolean isCollectingInTempTables() {
+    return _inTempTables != null;
+  }
+
+  /**
+   * Checks whether the caller binds a list as a SQL array.
+   * 
+   * @return true if arrays are bound
+   */
+  boolean isArrayBinding() {
+    return _arrayBinding;
+  }
+
+  /**
+   * Adds the keys to insert into a temporary table.
+   * 
+   * @param table  the table name, not null
+   * @param values  the keys, not null
+   */
+  void addInTempTable(String table, Object[] values) {
+    _inTempTables.put(table, values);
+  }
+
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+/**
+ * Renders SQL for a fragment that has been compiled by {@link SqlCompiler}.
+ * <p>
+ * Implementations are immutable and thread-safe.
+ */
+interface SqlRenderer {
+
+  /**
+   * Renders the SQL, appending it to the specified buffer.
+   * 
+   * @param buf  the buffer to append to, not null
+   * @param fragments  the SQL fragments for context, not null
+   * @param params  the SQL parameters, not null
+   * @param loopIndex  the current loopIndex
+   */
+  void render(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex);
+
+}
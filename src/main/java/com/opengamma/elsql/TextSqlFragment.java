@@ -16,6 +16,10 @@ final class TextSqlFragment extends SqlFragment {
    * The text of the fragment.
    */
   private final String _text;
+  /**
+   * Whether the text contains a loop index tag, determined when parsed.
+   */
+  private final boolean _loopIndex;
 
   /**
    * Creates an instance with text.
@@ -36,14 +40,45 @@ final class TextSqlFragment extends SqlFragment {
     } else {
       _text = text;
     }
+    _loopIndex = _text.contains("@LOOPINDEX");
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Creates a fragment with the text of this fragment followed by the text of another.
+   * <p>
+   * This is used to merge adjacent text when parsing, so that it is appended in one step.
+   * 
+   * @param other  the following text fragment, not null
+   * @return the merged fragment, not null
+   */
+  TextSqlFragment merge(TextSqlFragment other) {
+    return new TextSqlFragment(_text + other._text, false);
+  }
+
+  /**
+   * Creates a fragment with the canonical form of the text of this fragment.
+   * 
+   * @return the canonical fragment, not null
+   */
+  TextSqlFragment canonicalize() {
+    return new TextSqlFragment(CanonicalSql.canonicalize(_text), false);
   }
 
   //-------------------------------------------------------------------------
   @Override
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
     // handle LOOPINDEX, which is a text-like tag not surrounded by whitespace
-    String text = applyLoopIndex(_text, loopIndex);
-    buf.append(text);
+    if (_loopIndex) {
+      buf.append(applyLoopIndex(_text, loopIndex));
+    } else {
+      buf.append(_text);
+    }
+  }
+
+  @Override
+  SqlRenderer compile(SqlCompiler compiler) {
+    return (_loopIndex ? super.compile(compiler) : SqlCompiler.compileText(_text));
   }
 
   //-------------------------------------------------------------------------
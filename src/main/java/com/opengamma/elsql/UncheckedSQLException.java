@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps an {@link SQLException} with an unchecked exception.
+ * <p>
+ * This is thrown by the JDBC execution classes, such as {@link ElSqlJdbc}.
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+  /** Serialization version. */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param message  the message
+   * @param cause  the underlying exception, not null
+   */
+  public UncheckedSQLException(String message, SQLException cause) {
+    super(message, cause);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the underlying SQL exception.
+   * 
+   * @return the cause, not null
+   */
+  @Override
+  public synchronized SQLException getCause() {
+    return (SQLException) super.getCause();
+  }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representation of a multi-row VALUES clause.
+ * <p>
+ * The children form the template of a single row, which is output once for each
+ * row in the list variable, such as 'VALUES (:rows_0_id, :rows_0_name), (:rows_1_id, :rows_1_name)'.
+ * The template is rendered against the variables of each row, falling back to the other parameters,
+ * thus tags such as IF and LIKE are evaluated for each row.
+ * Variables in the rendered template that are found in the row are renamed for that row.
+ * A template that is plain text is rendered only once.
+ * <p>
+ * When rendered by {@link SqlFragments#getChunkedSql(String, SqlParams)}, only
+ * the rows of the current chunk are output.
+ */
+final class ValuesSqlFragment extends ContainerSqlFragment {
+
+  /**
+   * The list variable name (without the colon).
+   */
+  private final String _variable;
+  /**
+   * Whether the template contains tags, and so must be rendered for each row.
+   */
+  private boolean _rowDependent;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param variable  the variable determining the list of rows, not null
+   */
+  ValuesSqlFragment(String variable) {
+    _variable = extractVariableName(variable);
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  void addFragment(SqlFragment childFragment) {
+    super.addFragment(childFragment);
+    _rowDependent |= (childFragment instanceof TextSqlFragment) == false;
+  }
+
+  /**
+   * Gets the list variable name.
+   * 
+   * @return the variable name, not null
+   */
+  String getVariable() {
+    return _variable;
+  }
+
+  /**
+   * Extracts the rows from the list variable.
+   * <p>
+   * The list variable may be a collection or array of {@code SqlParams} or {@code Map}.
+   * 
+   * @param params  the SQL parameters, not null
+   * @return the rows, not null
+   * @throws IllegalArgumentException if the variable is not found or is not a list of rows
+   */
+  @SuppressWarnings("unchecked")
+  List<SqlParams> extractRows(SqlParams params) {
+    Object value = params.lookup(_variable);
+    Collection<?> coll;
+    if (value instanceof Collection) {
+      coll = (Collection<?>) value;
+    } else if (value instanceof Object[]) {
+      coll = Arrays.asList((Object[]) value);
+    } else if (value == null || value == SqlParams.NOT_FOUND) {
+      throw new IllegalArgumentException("Values list variable not found: " + _variable);
+    } else {
+      throw new IllegalArgumentException("Values list variable must be a Collection or array: " + _variable);
+    }
+    List<SqlParams> rows = new ArrayList<SqlParams>(coll.size());
+    for (Object row : coll) {
+      if (row instanceof SqlParams) {
+        rows.add((SqlParams) row);
+      } else if (row instanceof Map) {
+        rows.add(new MapSqlParams((Map<String, Object>) row));
+      } else {
+        throw new IllegalArgumentException("Values list must contain SqlParams or Map: " + _variable);
+      }
+    }
+    return Collections.unmodifiableList(rows);
+  }
+
+  /**
+   * Counts the maximum number of variables output by the template for any of the rows.
+   * <p>
+   * This is used to size the chunks, as each variable is a bind parameter.
+   * 
+   * @param fragments  the fragments, not null
+   * @param params  the SQL parameters, not null
+   * @param rows  the rows, not empty
+   * @return the maximum number of variables in a row
+   */
+  int countRowVariables(SqlFragments fragments, SqlParams params, List<SqlParams> rows) {
+    if (_rowDependent == false) {
+      return countVariables(renderRow(fragments, params, SqlFragments.NO_LOOP));
+    }
+    int max = 0;
+    for (SqlParams row : rows) {
+      max = Math.max(max, countVariables(renderRow(fragments, new RowSqlParams(row, params), SqlFragments.NO_LOOP)));
+    }
+    return max;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    ValuesSqlParams chunk = findChunk(params);
+    if (chunk.getSize() == 0) {
+      throw new IllegalArgumentException("Values list must not be empty: " + _variable);
+    }
+    // a plain text template is rendered once, otherwise it is rendered against each row
+    String template = (_rowDependent ? null : renderRow(fragments, params, loopIndex));
+    buf.append("VALUES ");
+    for (int i = 0; i < chunk.getSize(); i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      SqlParams row = chunk.getRows().get(chunk.getStart() + i);
+      String rowSql = (template != null ? template : renderRow(fragments, new RowSqlParams(row, params), loopIndex));
+      final int rowIndex = i;
+      buf.append(ParsedSql.replaceVariables(rowSql, name -> {
+        if (row.lookup(name) == SqlParams.NOT_FOUND) {
+          return null;
+        }
+        String renamed = chunk.rowVariable(rowIndex, name);
+        return (name.indexOf('.') >= 0 ? ":{" + renamed + "}" : ":" + renamed);
+      }));
+    }
+    buf.append(' ');
+  }
+
+  // counts the variables in the SQL
+  private static int countVariables(String sql) {
+    return ParsedSql.parse(sql).getNames().size();
+  }
+
+  // renders the template of a single row
+  private String renderRow(SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    StringBuilder template = new StringBuilder();
+    super.toSQL(template, fragments, params, loopIndex);
+    return template.toString().trim();
+  }
+
+  // finds the chunk being rendered, or treats all the rows as a single chunk
+  private ValuesSqlParams findChunk(SqlParams params) {
+    if (params instanceof ValuesSqlParams && ((ValuesSqlParams) params).getVariable().equals(_variable)) {
+      return (ValuesSqlParams) params;
+    }
+    List<SqlParams> rows = extractRows(params);
+    return new ValuesSqlParams(params, _variable, rows, 0, rows.size());
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + ":" + _variable + " " + getFragments();
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The variables of a single row, falling back to the other parameters.
+   */
+  private static final class RowSqlParams implements SqlParams {
+    private final SqlParams _row;
+    private final SqlParams _underlying;
+
+    RowSqlParams(SqlParams row, SqlParams underlying) {
+      _row = row;
+      _underlying = underlying;
+    }
+
+    @Override
+    public boolean contains(String variable) {
+      return lookup(variable) != NOT_FOUND;
+    }
+
+    @Override
+    public Object get(String variable) {
+      Object value = lookup(variable);
+      return (value == NOT_FOUND ? null : value);
+    }
+
+    @Override
+    public Object lookup(String variable) {
+      Object value = _row.lookup(variable);
+      return (value != NOT_FOUND ? value : _underlying.lookup(variable));
+    }
+  }
+
+}
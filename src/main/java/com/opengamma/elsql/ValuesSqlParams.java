@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import java.util.List;
+
+/**
+ * Provides access to SQL parameters for a chunk of rows output by a VALUES tag.
+ * <p>
+ * Row variables are named using the list variable, the index of the row within
+ * the chunk and the name of the variable within the row, such as 'rows_3_id'.
+ * Using the index within the chunk ensures that every full chunk has the same SQL.
+ * Other variables are obtained from the underlying parameters.
+ */
+final class ValuesSqlParams implements SqlParams {
+
+  /**
+   * The underlying parameters.
+   */
+  private final SqlParams _underlying;
+  /**
+   * The list variable name.
+   */
+  private final String _variable;
+  /**
+   * The prefix of the row variables.
+   */
+  private final String _prefix;
+  /**
+   * The rows.
+   */
+  private final List<SqlParams> _rows;
+  /**
+   * The index of the first row of the chunk.
+   */
+  private final int _start;
+  /**
+   * The number of rows in the chunk.
+   */
+  private final int _size;
+
+  /**
+   * Creates an instance.
+   * 
+   * @param underlying  the underlying parameters, not null
+   * @param variable  the list variable name, not null
+   * @param rows  the rows, not null
+   * @param start  the index of the first row of the chunk
+   * @param size  the number of rows in the chunk
+   */
+  ValuesSqlParams(SqlParams underlying, String variable, List<SqlParams> rows, int start, int size) {
+    _underlying = underlying;
+    _variable = variable;
+    _prefix = variable + "_";
+    _rows = rows;
+    _start = start;
+    _size = size;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the list variable name.
+   * 
+   * @return the variable name, not null
+   */
+  String getVariable() {
+    return _variable;
+  }
+
+  /**
+   * Gets the rows.
+   * 
+   * @return the rows, not null
+   */
+  List<SqlParams> getRows() {
+    return _rows;
+  }
+
+  /**
+   * Gets the index of the first row of the chunk.
+   * 
+   * @return the start index
+   */
+  int getStart() {
+    return _start;
+  }
+
+  /**
+   * Gets the number of rows in the chunk.
+   * 
+   * @return the size
+   */
+  int getSize() {
+    return _size;
+  }
+
+  /**
+   * Gets the name of a variable in a row.
+   * 
+   * @param rowIndex  the index of the row within the chunk
+   * @param name  the name of the variable within the row, not null
+   * @return the variable name, not null
+   */
+  String rowVariable(int rowIndex, String name) {
+    return _prefix + rowIndex + "_" + name;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public boolean contains(String variable) {
+    return lookup(variable) != NOT_FOUND;
+  }
+
+  @Override
+  public Object get(String variable) {
+    Object value = lookup(variable);
+    return (value == NOT_FOUND ? null : value);
+  }
+
+  @Override
+  public Object lookup(String variable) {
+    if (variable.startsWith(_prefix)) {
+      Object value = lookupRow(variable);
+      if (value != NOT_FOUND) {
+        return value;
+      }
+    }
+    return _underlying.lookup(variable);
+  }
+
+  // looks up a row variable, such as 'rows_3_id'
+  private Object lookupRow(String variable) {
+    int pos = _prefix.length();
+    int index = 0;
+    while (pos < variable.length() && Character.isDigit(variable.charAt(pos))) {
+      index = index * 10 + (variable.charAt(pos) - '0');
+      pos++;
+      if (index >= _size) {
+        return NOT_FOUND;
+      }
+    }
+    if (pos == _prefix.length() || pos >= variable.length() - 1 || variable.charAt(pos) != '_') {
+      return NOT_FOUND;
+    }
+    return _rows.get(_start + index).lookup(variable.substring(pos + 1));
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public String toString() {
+    return "ValuesSqlParams[" + _variable + ", " + _start + "+" + _size + ", " + _underlying + "]";
+  }
+
+}
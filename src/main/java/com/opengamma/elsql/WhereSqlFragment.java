@@ -21,10 +21,22 @@ final class WhereSqlFragment extends ContainerSqlFragment {
   //-------------------------------------------------------------------------
   @Override
   void toSQL(StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex) {
+    render(buf, fragments, params, loopIndex, childrenRenderer());
+  }
+
+  @Override
+  SqlRenderer compile(SqlCompiler compiler) {
+    SqlRenderer body = compiler.compileChildren(this);
+    return (buf, fragments, params, loopIndex) -> render(buf, fragments, params, loopIndex, body);
+  }
+
+  // renders the body after WHERE, removing the WHERE if the body is empty
+  private static void render(
+      StringBuilder buf, SqlFragments fragments, SqlParams params, int[] loopIndex, SqlRenderer body) {
     int oldLen = buf.length();
     buf.append("WHERE ");
     int newLen = buf.length();
-    super.toSQL(buf, fragments, params, loopIndex);
+    body.render(buf, fragments, params, loopIndex);
     if (buf.length() == newLen) {
       buf.setLength(oldLen);
     }
@@ -54,6 +54,8 @@
  * &#064;INCLUDE(nameOrVariable)<br>
  * The include tag includes the contents of a named block or a variable (prefixed by colon).
  * The tag may be embedded in the middle of a line.
+ * A qualified name, such as 'common.Columns', refers to a block in a shared library
+ * registered with {@link com.opengamma.elsql.ElSqlRegistry#registerLibrary(String, java.net.URL)}.
  * <p>
  * &#064;WHERE<br>
  * The where tag works together with the and/or tags to build dynamic searches.
@@ -100,6 +102,7 @@
  * The tag bases its actions on the specified integer variables which should begin with a colon.
  * This replaces the OFFSETFETCH/FETCH tags in most situations as it enables window functions
  * to be used where necessary.
+ * The SQL to count the rows of the paged SELECT can be obtained using {@code getCountSql()}.
  * <p>
  * &#064;OFFSETFETCH<br>
  * &#064;OFFSETFETCH(offsetVariable,fetchVariable)<br>
@@ -108,9 +111,52 @@
  * The tag bases its actions on the specified integer variables which should begin with a colon.
  * The names "paging_offset" and "paging_fetch" are used if the variables are not specified.
  * <p>
+ * If the configuration has bind paging enabled, the paging tags output the variables
+ * rather than their values, so that each page uses the same SQL.
+ * <p>
  * &#064;FETCH(fetchVariable)<br>
  * The fetch tag adds the SQL FETCH clause. It works as per the offset-fetch tag.
  * <p>
+ * &#064;KEYSET(column variable, column variable DESC, ...)<br>
+ * The keyset tag adds a predicate selecting the rows that sort after the last seen key,
+ * such as '(a, b) &gt; (:a, :b)', allowing paging without an OFFSET.
+ * The columns should match the ORDER BY, with DESC used to indicate a descending column.
+ * These can differ by database, so the actual SQL is generated by the configuration class.
+ * The tag is normally placed within an AND tag, so that it is omitted for the first page,
+ * and combined with the fetch tag to limit the size of the page.
+ * <p>
+ * &#064;IN(listVariable)<br>
+ * The in tag outputs a set-membership test against a list or array variable, following the column,
+ * such as 'WHERE id &#064;IN(:ids)'. The SQL is generated by the configuration class.
+ * On Postgres, this is '= ANY(:ids)', binding the list as a single SQL array.
+ * On other databases, it is an IN list with a variable for each element, padded to a bucketed size,
+ * so that lists of similar size share the same SQL.
+ * Lists larger than a database-specific threshold instead bind a single array using UNNEST,
+ * or select from a session temporary table that is filled by {@code ElSqlJdbc} before execution.
+ * The padded variables, such as 'ids3', and the arrays are bound by {@code ElSqlJdbc}.
+ * With Spring's {@code NamedParameterJdbcTemplate}, the padded variables are not in the caller's source,
+ * so wrap the source in {@link com.opengamma.elsql.IndexedSqlParameterSource} to resolve them.
+ * A list within '= ANY(:ids)' is expanded by Spring to one marker per element, thus that form requires
+ * {@code ElSqlJdbc}. Padded variables require the list to be a {@code List} or array.
+ * <p>
+ * &#064;LOOP(sizeVariable)<br>
+ * The loop tag outputs the indented lines once for each index, with &#064;LOOPINDEX replaced by the index
+ * and the text following &#064;LOOPJOIN output between each iteration.
+ * The size variable is a number, or a {@code List} or array to loop over each element.
+ * When looping over a list, variables such as ':ids&#064;LOOPINDEX' or ':{rows&#064;LOOPINDEX.id}'
+ * refer to the element, or a property of the element, without needing a parameter for each one.
+ * These names are bound from the list by {@code ElSqlJdbc}; callers of Spring's
+ * {@code NamedParameterJdbcTemplate} wrap their source in {@link com.opengamma.elsql.IndexedSqlParameterSource}.
+ * <p>
+ * &#064;VALUES(listVariable)<br>
+ * The values tag outputs a multi-row VALUES clause, one row for each element of the list.
+ * The indented lines form the template of a row, such as '(:id, :name)'.
+ * Each element of the list is a {@code SqlParams} or {@code Map} holding the variables of the row.
+ * The template is rendered for each row, thus tags within it, such as &#064;IF, are evaluated against
+ * the row, and variables not found in the row are obtained from the other parameters.
+ * Use {@code getChunkedSql()} to split the rows into statements that stay within the limits
+ * of the database, as defined by the configuration class.
+ * <p>
  * To use the library, simply obtain an instance of {@code ElSql} and call {@code getSql()}.
  */
 package com.opengamma.elsql;
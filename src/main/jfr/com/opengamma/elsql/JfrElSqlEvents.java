@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Emits profiling events for parsing and rendering using Java Flight Recorder.
+ * <p>
+ * The events are 'com.opengamma.elsql.Parse' and 'com.opengamma.elsql.Render'.
+ * Rendering has a default threshold of 1 millisecond, which can be lowered in the JFR settings.
+ * <p>
+ * This class is loaded by reflection from {@link ElSqlEvents}.
+ */
+final class JfrElSqlEvents extends ElSqlEvents {
+
+  /**
+   * Creates an instance.
+   */
+  JfrElSqlEvents() {
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  Object beginParse() {
+    ParseEvent event = new ParseEvent();
+    if (event.isEnabled() == false) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void commitParse(Object event, String source, int lines, int blocks) {
+    ParseEvent parseEvent = (ParseEvent) event;
+    parseEvent.end();
+    if (parseEvent.shouldCommit()) {
+      parseEvent.source = source;
+      parseEvent.lines = lines;
+      parseEvent.blocks = blocks;
+      parseEvent.commit();
+    }
+  }
+
+  @Override
+  Object beginRender() {
+    RenderEvent event = new RenderEvent();
+    if (event.isEnabled() == false) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void commitRender(Object event, String name, String sql) {
+    RenderEvent renderEvent = (RenderEvent) event;
+    renderEvent.end();
+    if (renderEvent.shouldCommit()) {
+      renderEvent.name = name;
+      renderEvent.shapeKey = sql.hashCode();
+      renderEvent.length = sql.length();
+      renderEvent.commit();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The event for parsing a file.
+   */
+  @Name("com.opengamma.elsql.Parse")
+  @Label("ElSql Parse")
+  @Category("ElSql")
+  @Description("Parsing of an elsql file")
+  static final class ParseEvent extends Event {
+    @Label("Source")
+    String source;
+    @Label("Lines")
+    int lines;
+    @Label("Blocks")
+    int blocks;
+  }
+
+  /**
+   * The event for rendering a named block.
+   */
+  @Name("com.opengamma.elsql.Render")
+  @Label("ElSql Render")
+  @Category("ElSql")
+  @Description("Rendering of a named elsql block to SQL")
+  @Threshold("1 ms")
+  static final class RenderEvent extends Event {
+    @Label("Name")
+    String name;
+    @Label("Shape Key")
+    @Description("Hash code of the rendered SQL, equal for blocks rendered to the same SQL")
+    int shapeKey;
+    @Label("Length")
+    int length;
+  }
+
+}
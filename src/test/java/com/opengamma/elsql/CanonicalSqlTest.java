@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class CanonicalSqlTest {
+
+  @Test
+  public void test_whitespace() {
+    assertEquals("SELECT * FROM foo", CanonicalSql.canonicalize("SELECT  *\tFROM   foo"));
+    assertEquals(" SELECT ", CanonicalSql.canonicalize("   SELECT   "));
+    assertEquals("", CanonicalSql.canonicalize(""));
+  }
+
+  @Test
+  public void test_brackets() {
+    assertEquals("WHERE id IN (1, 2, 3)", CanonicalSql.canonicalize("WHERE id IN ( 1 ,2,  3 )"));
+    assertEquals("COUNT(*)", CanonicalSql.canonicalize("COUNT( * )"));
+    assertEquals("VALUES (", CanonicalSql.canonicalize("VALUES ( "));
+    assertEquals("a, ", CanonicalSql.canonicalize("a ,"));
+  }
+
+  @Test
+  public void test_keywords() {
+    assertEquals("SELECT a FROM foo WHERE b IS NOT NULL",
+        CanonicalSql.canonicalize("select a from foo where b is not null"));
+    assertEquals("SELECT name, value FROM foo", CanonicalSql.canonicalize("Select name, value From foo"));
+  }
+
+  @Test
+  public void test_keywords_qualified() {
+    assertEquals("SELECT t.order FROM foo WHERE a = :from",
+        CanonicalSql.canonicalize("select t.order from foo where a = :from"));
+    assertEquals("WHERE a = :{in} AND b = :${on}", CanonicalSql.canonicalize("where a = :{in} and b = :${on}"));
+    assertEquals("a::text @LOOPJOIN order.x", CanonicalSql.canonicalize("a::text @LOOPJOIN order.x"));
+    assertEquals("from_date, x1and", CanonicalSql.canonicalize("from_date, x1and"));
+  }
+
+  @Test
+  public void test_quoted() {
+    assertEquals("WHERE a = 'select  from' AND \"Order  By\" = 1",
+        CanonicalSql.canonicalize("where a =  'select  from'  and  \"Order  By\" = 1"));
+    assertEquals("WHERE a = 'it''s'", CanonicalSql.canonicalize("where a = 'it''s'"));
+    assertEquals("WHERE a = 'open", CanonicalSql.canonicalize("where a = 'open"));
+  }
+
+  @Test
+  public void test_quoted_postgres() {
+    assertEquals("SELECT $$select  from$$ AS x",
+        CanonicalSql.canonicalize("select  $$select  from$$ as x"));
+    assertEquals("SELECT $fn$ a $$ from $fn$ FROM foo",
+        CanonicalSql.canonicalize("select $fn$ a $$ from $fn$ from foo"));
+    assertEquals("WHERE a = E'it\\'s  from' AND b = e'x'",
+        CanonicalSql.canonicalize("where a = E'it\\'s  from' and b = e'x'"));
+    assertEquals("WHERE a = $1 AND b = $2", CanonicalSql.canonicalize("where a = $1 and  b = $2"));
+    assertEquals("SELECT $$open", CanonicalSql.canonicalize("select $$open"));
+    assertEquals("WHERE name = 'E'", CanonicalSql.canonicalize("where name = 'E'"));
+  }
+
+  @Test
+  public void test_quotedIdentifiers() {
+    assertEquals("SELECT `order`, `from  x` FROM foo", CanonicalSql.canonicalize("select `order`,`from  x` from foo"));
+    assertEquals("SELECT [order], [from  x] FROM foo", CanonicalSql.canonicalize("select [order],[from  x] from foo"));
+  }
+
+}
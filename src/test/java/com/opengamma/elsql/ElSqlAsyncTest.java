@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class ElSqlAsyncTest {
+
+  private JDBCDataSource _dataSource;
+  private Connection _connection;
+  private ElSql _elsql;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    _dataSource = new JDBCDataSource();
+    _dataSource.setUrl("jdbc:hsqldb:mem:elsqlasynctest");
+    _dataSource.setUser("SA");
+    _connection = _dataSource.getConnection();
+    _elsql = ElSql.of(ElSqlConfig.HSQL, ElSqlJdbcTest.class);
+    try (ElSqlJdbc jdbc = ElSqlJdbc.of(_elsql, _connection)) {
+      jdbc.update("CreateFoo", EmptySqlParams.INSTANCE);
+      for (int i = 0; i < 10; i++) {
+        jdbc.update("InsertFoo", new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+    }
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    _connection.createStatement().execute("DROP TABLE foo");
+    _connection.close();
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_query() {
+    try (ElSqlAsync test = ElSqlAsync.of(_elsql, _dataSource, 4)) {
+      List<CompletableFuture<List<String>>> futures = new ArrayList<CompletableFuture<List<String>>>();
+      for (int i = 0; i < 10; i++) {
+        futures.add(test.query("SelectFoo", new MapSqlParams("min_id", i), (rs, rowNum) -> rs.getString("name")));
+      }
+      for (int i = 0; i < 10; i++) {
+        List<String> result = futures.get(i).join();
+        assertEquals(10 - i, result.size());
+        assertEquals("Name" + i, result.get(0));
+      }
+    }
+  }
+
+  @Test
+  public void test_update() {
+    try (ElSqlAsync test = ElSqlAsync.of(_elsql, _dataSource, 2)) {
+      CompletableFuture<Integer> future = test.update("InsertFoo", new MapSqlParams("id", 20).with("name", "Extra"));
+      assertEquals(1, future.join().intValue());
+      List<String> result = test.query(
+          "SelectFoo", new MapSqlParams("name", "Extra"), (rs, rowNum) -> rs.getString("name")).join();
+      assertEquals(Arrays.asList("Extra"), result);
+    }
+  }
+
+  @Test
+  public void test_maxConnections() {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (ElSqlAsync test = ElSqlAsync.of(_elsql, _dataSource, 2, executor)) {
+      AtomicInteger active = new AtomicInteger();
+      AtomicInteger maxActive = new AtomicInteger();
+      List<CompletableFuture<List<Integer>>> futures = new ArrayList<CompletableFuture<List<Integer>>>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(test.query("SelectFoo", new MapSqlParams("min_id", 9), (rs, rowNum) -> {
+          int now = active.incrementAndGet();
+          maxActive.accumulateAndGet(now, Math::max);
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          active.decrementAndGet();
+          return rs.getInt("id");
+        }));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+      assertTrue(maxActive.get() <= 2);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void test_renderErrorOnCallingThread() {
+    try (ElSqlAsync test = ElSqlAsync.of(_elsql, _dataSource, 2)) {
+      assertThrows(IllegalArgumentException.class, () -> test.update("Unknown", EmptySqlParams.INSTANCE));
+    }
+  }
+
+  @Test
+  public void test_databaseError() {
+    try (ElSqlAsync test = ElSqlAsync.of(_elsql, _dataSource, 2)) {
+      CompletableFuture<Integer> future = test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Dup"));
+      CompletionException ex = assertThrows(CompletionException.class, () -> future.join());
+      assertTrue(ex.getCause() instanceof UncheckedSQLException);
+    }
+  }
+
+  @Test
+  public void test_nulls() {
+    assertThrows(IllegalArgumentException.class, () -> ElSqlAsync.of(null, _dataSource, 2));
+    assertThrows(IllegalArgumentException.class, () -> ElSqlAsync.of(_elsql, null, 2));
+    assertThrows(IllegalArgumentException.class, () -> ElSqlAsync.of(_elsql, _dataSource, 0));
+    assertThrows(IllegalArgumentException.class, () -> ElSqlAsync.of(_elsql, _dataSource, 2, null));
+  }
+
+}
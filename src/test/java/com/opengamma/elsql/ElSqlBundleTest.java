@@ -8,6 +8,11 @@ package com.opengamma.elsql;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
@@ -77,4 +82,26 @@ public class ElSqlBundleTest {
     assertEquals("SELECT * FROM foo ", test.getSql("TestFoo", new MapSqlParameterSource()));
   }
 
+  @Test
+  public void test_getSql_in() throws IOException {
+    Resource resource = new ClassPathResource("com/opengamma/elsql/ElSqlJdbcTest.elsql");
+    MapSqlParameterSource source = new MapSqlParameterSource("ids", Arrays.asList(1, 2, 3));
+    // the padded IN list is supported, resolving the padded variables by wrapping the source
+    ElSqlBundle test = ElSqlBundle.parse(ElSqlConfig.HSQL, resource);
+    assertEquals("SELECT id, name FROM foo WHERE id IN (:ids0, :ids1, :ids2, :ids2) ORDER BY id ",
+        test.getSql("SelectFooIn", source));
+    assertEquals(3, new IndexedSqlParameterSource(source).getValue("ids2"));
+    // Spring would expand the array, so it is rejected
+    ElSqlBundle postgres = test.withConfig(ElSqlConfig.POSTGRES);
+    assertThrows(IllegalArgumentException.class, () -> postgres.getSql("SelectFooIn", source));
+    List<Integer> large = Collections.nCopies(2000, 1);
+    MapSqlParameterSource largeSource = new MapSqlParameterSource("ids", large);
+    assertThrows(IllegalArgumentException.class, () -> test.getSql("SelectFooIn", largeSource));
+    assertThrows(IllegalArgumentException.class,
+        () -> test.withConfig(ElSqlConfig.MYSQL).getSql("SelectFooIn", largeSource));
+    // the same SQL is available without the restriction from ElSql
+    assertEquals("SELECT id, name FROM foo WHERE id = ANY(:ids) ORDER BY id ",
+        ElSql.parse(ElSqlConfig.POSTGRES, resource.getURL()).getSql("SelectFooIn", new MapSqlParams("ids", large)));
+  }
+
 }
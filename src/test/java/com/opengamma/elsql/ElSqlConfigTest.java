@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class ElSqlConfigTest {
+
+  private static final String SELECT = "SELECT * FROM foo ORDER BY bar ";
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_appendPaging_matchesAddPaging() {
+    ElSqlConfig[] configs = {
+        ElSqlConfig.DEFAULT, ElSqlConfig.POSTGRES, ElSqlConfig.HSQL, ElSqlConfig.MYSQL,
+        ElSqlConfig.ORACLE, ElSqlConfig.SQL_SERVER_2008, ElSqlConfig.VERTICA};
+    int[][] pagings = {{0, 0}, {0, 10}, {20, 10}};
+    for (ElSqlConfig config : configs) {
+      for (int[] paging : pagings) {
+        StringBuilder buf = new StringBuilder("WITH x ").append(SELECT);
+        config.appendPaging(buf, 7, paging[0], paging[1]);
+        assertEquals("WITH x " + config.addPaging(SELECT, paging[0], paging[1]), buf.toString(), config.getName());
+      }
+    }
+  }
+
+  @Test
+  public void test_appendPaging_oracle() {
+    StringBuilder buf = new StringBuilder(SELECT);
+    ElSqlConfig.ORACLE.appendPaging(buf, 0, 20, 10);
+    assertEquals("SELECT * FROM (SELECT  row_.*,rownum rownum_ FROM ( SELECT * FROM foo ORDER BY bar " +
+        " ) row_ where rownum <= 30)  WHERE rownum_  > 20", buf.toString());
+  }
+
+  @Test
+  public void test_appendPaging_subclassOverridesAddPaging() {
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public String addPaging(String selectToPage, int offset, int fetchLimit) {
+        return "PAGED(" + selectToPage + ")";
+      }
+    };
+    StringBuilder buf = new StringBuilder("X ").append(SELECT);
+    config.appendPaging(buf, 2, 20, 10);
+    assertEquals("X PAGED(" + SELECT + ")", buf.toString());
+  }
+
+  @Test
+  public void test_getPagingCached() {
+    ElSqlConfig config = new ElSqlConfig("Test");
+    String paging = config.getPagingCached(20, 10);
+    assertEquals("OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY ", paging);
+    assertSame(paging, config.getPagingCached(20, 10));
+    assertEquals("LIMIT 10 OFFSET 20 ", ElSqlConfig.MYSQL.getPagingCached(20, 10));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_withBindPaging() {
+    ElSqlConfig test = ElSqlConfig.POSTGRES.withBindPaging(true);
+    assertEquals(false, ElSqlConfig.POSTGRES.isBindPaging());
+    assertEquals(true, test.isBindPaging());
+    assertEquals("Postgres", test.getName());
+    assertSame(test, test.withBindPaging(true));
+    assertEquals(false, test.withBindPaging(false).isBindPaging());
+    assertEquals(true, new ElSqlConfig("Test").withBindPaging(true).isBindPaging());
+  }
+
+  @Test
+  public void test_withCompiledRendering() {
+    ElSqlConfig test = ElSqlConfig.POSTGRES.withBindPaging(true).withCompiledRendering(true);
+    assertEquals(false, ElSqlConfig.POSTGRES.isCompiledRendering());
+    assertEquals(true, test.isCompiledRendering());
+    assertEquals(true, test.isBindPaging());
+    assertEquals("Postgres", test.getName());
+    assertEquals("= ANY(:ids) ", test.getIn("ids", 2));
+    assertSame(test, test.withCompiledRendering(true));
+    assertEquals(false, test.withCompiledRendering(false).isCompiledRendering());
+    assertEquals(true, test.withBindPaging(false).isCompiledRendering());
+    assertEquals(true, new ElSqlConfig("Test").withCompiledRendering(true).isCompiledRendering());
+    assertEquals("ElSqlConfig[Postgres,bindPaging,compiledRendering]", test.toString());
+  }
+
+  @Test
+  public void test_withCompiledRendering_subclass() {
+    ElSqlConfig test = new ElSqlConfig("Test") {
+      @Override
+      public String getLikeSuffix() {
+        return "ESCAPE '!' ";
+      }
+    };
+    assertSame(test, test.withCompiledRendering(false));
+    assertThrows(UnsupportedOperationException.class, () -> test.withCompiledRendering(true));
+  }
+
+  @Test
+  public void test_withBindPaging_subclass() {
+    ElSqlConfig test = new ElSqlConfig("Test") {
+      @Override
+      public String getLikeSuffix() {
+        return "ESCAPE '!' ";
+      }
+    };
+    assertSame(test, test.withBindPaging(false));
+    assertThrows(UnsupportedOperationException.class, () -> test.withBindPaging(true));
+  }
+
+  @Test
+  public void test_withBindPaging_subclassOverrides() {
+    ElSqlConfig test = new TestConfig(false).withBindPaging(true);
+    assertEquals(true, test.isBindPaging());
+    assertEquals("Test", test.getName());
+    assertEquals("ESCAPE '!' ", test.getLikeSuffix());
+    assertEquals("ElSqlConfig[Test,bindPaging]", test.toString());
+    assertSame(test, test.withBindPaging(true));
+    assertEquals(false, test.withBindPaging(false).isBindPaging());
+  }
+
+  @Test
+  public void test_withBindPaging_subclassOverridesFlag() {
+    ElSqlConfig test = new ElSqlConfig("Test") {
+      @Override
+      public boolean isBindPaging() {
+        return true;
+      }
+    };
+    assertSame(test, test.withBindPaging(true));
+  }
+
+  // a subclass written in the recommended way
+  static class TestConfig extends ElSqlConfig {
+    TestConfig(boolean bindPaging) {
+      super("Test", bindPaging);
+    }
+    @Override
+    public ElSqlConfig withBindPaging(boolean bindPaging) {
+      return (bindPaging == isBindPaging() ? this : new TestConfig(bindPaging));
+    }
+    @Override
+    public String getLikeSuffix() {
+      return "ESCAPE '!' ";
+    }
+  }
+
+  @Test
+  public void test_getBindPaging() {
+    ElSqlConfig test = ElSqlConfig.DEFAULT.withBindPaging(true);
+    assertEquals("", test.getBindPaging(0, 0, ":o", ":f"));
+    assertEquals("OFFSET :o ROWS ", test.getBindPaging(20, 0, ":o", ":f"));
+    assertEquals("FETCH FIRST :f ROWS ONLY ", test.getBindPaging(0, 10, ":o", ":f"));
+    assertEquals("OFFSET :o ROWS FETCH NEXT :f ROWS ONLY ", test.getBindPaging(20, 10, ":o", ":f"));
+    assertEquals("LIMIT :f OFFSET :o ", ElSqlConfig.MYSQL.getBindPaging(20, 10, ":o", ":f"));
+  }
+
+  @Test
+  public void test_appendBindPaging_oracle() {
+    StringBuilder buf = new StringBuilder(SELECT);
+    ElSqlConfig.ORACLE.appendBindPaging(buf, 0, 20, 10, ":o", ":f");
+    assertEquals("SELECT * FROM (SELECT  row_.*,rownum rownum_ FROM ( SELECT * FROM foo ORDER BY bar " +
+        " ) row_ where rownum <= :o + :f)  WHERE rownum_  > :o", buf.toString());
+  }
+
+  @Test
+  public void test_appendBindPaging_sqlServer() {
+    StringBuilder buf = new StringBuilder(SELECT);
+    ElSqlConfig.SQL_SERVER_2008.appendBindPaging(buf, 0, 20, 10, ":o", ":f");
+    assertEquals("SELECT * FROM (SELECT *, ROW_NUMBER() OVER (ORDER BY bar) AS ROW_NUM FROM foo) AS ROW_TABLE " +
+        "WHERE ROW_NUM > :o AND ROW_NUM <= :o + :f", buf.toString());
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_streaming() {
+    assertEquals(1000, ElSqlConfig.DEFAULT.getStreamingFetchSize());
+    assertEquals(Integer.MIN_VALUE, ElSqlConfig.MYSQL.getStreamingFetchSize());
+    assertEquals(false, ElSqlConfig.DEFAULT.isStreamingAutoCommitDisabled());
+    assertEquals(true, ElSqlConfig.POSTGRES.isStreamingAutoCommitDisabled());
+  }
+
+  @Test
+  public void test_getBindMarker() {
+    assertEquals("?", ElSqlConfig.DEFAULT.getBindMarker(0));
+    assertEquals("?", ElSqlConfig.MYSQL.getBindMarker(1));
+    assertEquals("$1", ElSqlConfig.POSTGRES.getBindMarker(0));
+    assertEquals("$3", ElSqlConfig.POSTGRES.getBindMarker(2));
+    assertEquals("@p2", ElSqlConfig.SQL_SERVER_2008.getBindMarker(1));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_getInBucketSize() {
+    assertEquals(1, ElSqlConfig.DEFAULT.getInBucketSize(1));
+    assertEquals(4, ElSqlConfig.DEFAULT.getInBucketSize(3));
+    assertEquals(8, ElSqlConfig.DEFAULT.getInBucketSize(8));
+    assertEquals(1024, ElSqlConfig.DEFAULT.getInBucketSize(600));
+    assertEquals(1000, ElSqlConfig.ORACLE.getInBucketSize(600));
+    assertEquals(1001, ElSqlConfig.ORACLE.getInBucketSize(1001));
+  }
+
+  @Test
+  public void test_getIn() {
+    assertEquals("IN (:ids0, :ids1, :ids2, :ids2) ", ElSqlConfig.DEFAULT.getIn("ids", 3));
+    assertEquals("IN (NULL) ", ElSqlConfig.DEFAULT.getIn("ids", 0));
+    assertEquals("= ANY(:ids) ", ElSqlConfig.POSTGRES.getIn("ids", 3));
+  }
+
+  @Test
+  public void test_getIn_large() {
+    assertEquals(Integer.MAX_VALUE, ElSqlConfig.DEFAULT.getInThreshold());
+    assertEquals("IN (UNNEST(:ids)) ", ElSqlConfig.HSQL.getIn("ids", 1001));
+    assertEquals("IN (SELECT * FROM UNNEST(:ids)) ", ElSqlConfig.DEFAULT.getInLarge("ids", 1001));
+    assertEquals("= ANY(:ids) ", ElSqlConfig.POSTGRES.getIn("ids", 1001));
+    assertEquals("#elsql_in_ids_bigint", ElSqlConfig.SQL_SERVER_2008.getInTempTable("ids", "bigint"));
+    assertEquals("elsql_in_a_b_varchar_4000", ElSqlConfig.MYSQL.getInTempTable("a.b", "varchar(4000)"));
+    assertEquals("elsql_in_ids_double_precision", ElSqlConfig.VERTICA.getInTempTable("ids", "double precision"));
+    assertEquals(null, ElSqlConfig.HSQL.getInTempTable("ids", "bigint"));
+    assertEquals(null, ElSqlConfig.DEFAULT.getInTempTable("ids", "bigint"));
+    assertEquals("CREATE TEMPORARY TABLE IF NOT EXISTS elsql_in_ids (elsql_key bigint)",
+        ElSqlConfig.MYSQL.getInTempTableCreate("elsql_in_ids", "bigint"));
+  }
+
+  @Test
+  public void test_getIn_oracle() {
+    assertEquals(1000, ElSqlConfig.ORACLE.getInThreshold());
+    assertEquals(1000, ElSqlConfig.ORACLE.getInBucketSize(600));
+    assertEquals("elsql_in_ids_bigint", ElSqlConfig.ORACLE.getInTempTable("ids", "bigint"));
+    assertEquals("DECLARE n NUMBER; BEGIN " +
+        "SELECT COUNT(*) INTO n FROM user_tables WHERE table_name = 'ELSQL_IN_IDS_BIGINT'; " +
+        "IF n = 0 THEN EXECUTE IMMEDIATE 'CREATE GLOBAL TEMPORARY TABLE elsql_in_ids_bigint (elsql_key number(19)) " +
+        "ON COMMIT PRESERVE ROWS'; END IF; END;",
+        ElSqlConfig.ORACLE.getInTempTableCreate("elsql_in_ids_bigint", "bigint"));
+  }
+
+}
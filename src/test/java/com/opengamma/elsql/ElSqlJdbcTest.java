@@ -0,0 +1,391 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class ElSqlJdbcTest {
+
+  private static final ElSqlJdbc.RowMapper<String> NAME_MAPPER = (rs, rowNum) -> rs.getString("name");
+
+  private Connection _connection;
+  private ElSql _elsql;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    _connection = DriverManager.getConnection("jdbc:hsqldb:mem:elsqljdbctest", "SA", "");
+    _elsql = ElSql.of(ElSqlConfig.HSQL, ElSqlJdbcTest.class);
+    try (ElSqlJdbc jdbc = ElSqlJdbc.of(_elsql, _connection)) {
+      jdbc.update("CreateFoo", EmptySqlParams.INSTANCE);
+    }
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    _connection.createStatement().execute("DROP TABLE foo");
+    _connection.close();
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_updateAndQuery() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      assertEquals(1, test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha")));
+      assertEquals(1, test.update("InsertFoo", new MapSqlParams("id", 2).with("name", "Beta")));
+      assertEquals(1, test.update("InsertFoo", new MapSqlParams("id", 3).with("name", null)));
+      
+      assertEquals(Arrays.asList("Alpha", "Beta", null), test.query("SelectFoo", EmptySqlParams.INSTANCE, NAME_MAPPER));
+      assertEquals(Collections.singletonList("Beta"), test.query("SelectFoo", new MapSqlParams("name", "Beta"), NAME_MAPPER));
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put("min_id", 2);
+      assertEquals(Arrays.asList("Beta", null), test.query("SelectFoo", params, NAME_MAPPER));
+    }
+  }
+
+  @Test
+  public void test_query_in() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      for (int i = 0; i < 5; i++) {
+        test.update("InsertFoo", new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+      assertEquals(Arrays.asList("Name1", "Name3", "Name4"),
+          test.query("SelectFooIn", new MapSqlParams("ids", Arrays.asList(4, 1, 3)), NAME_MAPPER));
+      assertEquals(Arrays.asList("Name2"),
+          test.query("SelectFooIn", new MapSqlParams("ids", new Integer[] {2}), NAME_MAPPER));
+      assertEquals(Collections.emptyList(),
+          test.query("SelectFooIn", new MapSqlParams("ids", Collections.emptyList()), NAME_MAPPER));
+    }
+  }
+
+  @Test
+  public void test_query_inArray() {
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public String getIn(String variable, int size) {
+        return (size == 0 ? super.getIn(variable, size) : "IN (UNNEST(:" + variable + ")) ");
+      }
+    };
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql.withConfig(config), _connection)) {
+      for (int i = 0; i < 5; i++) {
+        test.update("InsertFoo", new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+      assertEquals(Arrays.asList("Name1", "Name3", "Name4"),
+          test.query("SelectFooIn", new MapSqlParams("ids", Arrays.asList(4, 1, 3)), NAME_MAPPER));
+      assertEquals(Arrays.asList("Name1", "Name2"),
+          test.query("SelectFooIn", new MapSqlParams("ids", Arrays.asList(1, 2, 1, 2)), NAME_MAPPER));
+    }
+  }
+
+  @Test
+  public void test_query_inLarge_unnest() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      for (int i = 0; i < 5; i++) {
+        test.update("InsertFoo", new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+      List<Integer> ids = new ArrayList<Integer>();
+      for (int i = 1; i <= 3000; i += 2) {
+        ids.add(i);
+      }
+      assertEquals("SELECT id, name FROM foo WHERE id IN (UNNEST(:ids)) ORDER BY id ",
+          _elsql.getSql("SelectFooIn", new MapSqlParams("ids", ids)));
+      assertEquals(Arrays.asList("Name1", "Name3"),
+          test.query("SelectFooIn", new MapSqlParams("ids", ids), NAME_MAPPER));
+    }
+  }
+
+  @Test
+  public void test_query_inLarge_tempTable() {
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getInThreshold() {
+        return 2;
+      }
+      @Override
+      public String getInTempTable(String variable, String keyType) {
+        return inTempTableName("", variable, keyType);
+      }
+      @Override
+      public String getInTempTableCreate(String table, String keyType) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (elsql_key " + keyType + ")";
+      }
+    };
+    ElSql elsql = _elsql.withConfig(config);
+    try (ElSqlJdbc test = ElSqlJdbc.of(elsql, _connection)) {
+      for (int i = 0; i < 5; i++) {
+        test.update("InsertFoo", new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+      // the public SQL is never executed through the temporary table, so is rejected
+      assertThrows(IllegalArgumentException.class,
+          () -> elsql.getSql("SelectFooIn", new MapSqlParams("ids", Arrays.asList(4, 1, 3))));
+      Map<String, Object[]> tables = new LinkedHashMap<String, Object[]>();
+      assertEquals("SELECT id, name FROM foo WHERE id IN (SELECT elsql_key FROM elsql_in_ids_integer) ORDER BY id ",
+          elsql.getSql("SelectFooIn", new MapSqlParams("ids", Arrays.asList(4, 1, 3)), tables));
+      assertEquals(Collections.singleton("elsql_in_ids_integer"), tables.keySet());
+      assertEquals(Arrays.asList("Name1", "Name3", "Name4"),
+          test.query("SelectFooIn", new MapSqlParams("ids", Arrays.asList(4, 1, 3)), NAME_MAPPER));
+      assertEquals(Arrays.asList("Name0", "Name2", "Name4"),
+          test.query("SelectFooIn", new MapSqlParams("ids", new int[] {0, 2, 4}), NAME_MAPPER));
+      assertEquals(Arrays.asList("Name2"),
+          test.query("SelectFooIn", new MapSqlParams("ids", Arrays.asList(2)), NAME_MAPPER));
+      // a different key type uses a different table
+      assertEquals(Arrays.asList("Name1", "Name4"),
+          test.query("SelectFooIn", new MapSqlParams("ids", Arrays.asList(4L, 1L, 7L)), NAME_MAPPER));
+      // an IN tag that is not output does not need its list
+      assertEquals(Arrays.asList("Name1", "Name3"),
+          test.query("SelectFooInOptional", new MapSqlParams("ids", Arrays.asList(1, 3, 7)), NAME_MAPPER));
+      assertEquals(5, test.query("SelectFooInOptional", EmptySqlParams.INSTANCE, NAME_MAPPER).size());
+    } finally {
+      try {
+        _connection.createStatement().execute("DROP TABLE elsql_in_ids_integer");
+        _connection.createStatement().execute("DROP TABLE elsql_in_ids_bigint");
+      } catch (SQLException ex) {
+        throw new UncheckedSQLException("Unable to drop table", ex);
+      }
+    }
+  }
+
+  @Test
+  public void test_getSql_inLarge_tempTableRejected() {
+    ElSql elsql = _elsql.withConfig(ElSqlConfig.MYSQL);
+    List<Integer> ids = new ArrayList<Integer>();
+    for (int i = 0; i < 1001; i++) {
+      ids.add(i);
+    }
+    MapSqlParams params = new MapSqlParams("ids", ids);
+    assertThrows(IllegalArgumentException.class, () -> elsql.getSql("SelectFooIn", params));
+    assertThrows(IllegalArgumentException.class, () -> elsql.getPositionalSql("SelectFooIn", params));
+    assertThrows(IllegalArgumentException.class,
+        () -> elsql.getSql("SelectFooIn", Collections.<String, Object>singletonMap("ids", ids)));
+    // at the threshold, the IN list is output
+    String sql = elsql.getSql("SelectFooIn", new MapSqlParams("ids", ids.subList(0, 1000)));
+    assertEquals(true, sql.startsWith("SELECT id, name FROM foo WHERE id IN (:ids0, :ids1, "), sql);
+  }
+
+  @Test
+  public void test_batchUpdate() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      List<MapSqlParams> rows = new ArrayList<MapSqlParams>();
+      for (int i = 0; i < 7; i++) {
+        rows.add(new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+      int[] counts = test.batchUpdate("InsertFoo", rows, 3);
+      assertArrayEquals(new int[] {1, 1, 1, 1, 1, 1, 1}, counts);
+      assertEquals(7, test.query("SelectFoo", EmptySqlParams.INSTANCE, NAME_MAPPER).size());
+      assertEquals(2, test.getCachedStatementCount());
+    }
+  }
+
+  @Test
+  public void test_batchUpdate_empty() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      assertArrayEquals(new int[0], test.batchUpdate("InsertFoo", Collections.<SqlParams>emptyList()));
+    }
+  }
+
+  @Test
+  public void test_batchUpdate_differentShape() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      List<MapSqlParams> rows = Arrays.asList(new MapSqlParams("name", "A"), new MapSqlParams("min_id", 1));
+      assertThrows(IllegalArgumentException.class, () -> test.batchUpdate("SelectFoo", rows));
+    }
+  }
+
+  @Test
+  public void test_batchUpdate_failure() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      List<MapSqlParams> rows = Arrays.asList(
+          new MapSqlParams("id", 1).with("name", "A"),
+          new MapSqlParams("id", 1).with("name", "B"));
+      assertThrows(UncheckedSQLException.class, () -> test.batchUpdate("InsertFoo", rows));
+      assertEquals(1, test.update("InsertFoo", new MapSqlParams("id", 2).with("name", "C")));
+    }
+  }
+
+  @Test
+  public void test_batchUpdate_badBatchSize() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      assertThrows(IllegalArgumentException.class,
+          () -> test.batchUpdate("InsertFoo", Collections.<SqlParams>emptyList(), 0));
+    }
+  }
+
+  @Test
+  public void test_updateChunked() {
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getMaxValuesRows() {
+        return 3;
+      }
+    };
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql.withConfig(config), _connection)) {
+      List<SqlParams> rows = new ArrayList<SqlParams>();
+      for (int i = 0; i < 8; i++) {
+        rows.add(new MapSqlParams("id", i).with("name", "Name" + i));
+      }
+      assertEquals(8, test.updateChunked("InsertFoos", new MapSqlParams("rows", rows)));
+      assertEquals(8, test.query("SelectFoo", EmptySqlParams.INSTANCE, NAME_MAPPER).size());
+      assertEquals(3, test.getCachedStatementCount());
+    }
+  }
+
+  @Test
+  public void test_queryStreaming() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      test.update("InsertFoo", new MapSqlParams("id", 2).with("name", "Beta"));
+      List<String> names = new ArrayList<String>();
+      long count = test.queryStreaming("SelectFoo", EmptySqlParams.INSTANCE, rs -> names.add(rs.getString("name")));
+      assertEquals(2, count);
+      assertEquals(Arrays.asList("Alpha", "Beta"), names);
+    }
+  }
+
+  @Test
+  public void test_stream() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      test.update("InsertFoo", new MapSqlParams("id", 2).with("name", "Beta"));
+      test.update("InsertFoo", new MapSqlParams("id", 3).with("name", "Gamma"));
+      try (Stream<String> stream = test.stream("SelectFoo", new MapSqlParams("min_id", 2), NAME_MAPPER)) {
+        assertEquals(Arrays.asList("Beta", "Gamma"), stream.collect(Collectors.toList()));
+      }
+    }
+  }
+
+  @Test
+  public void test_stream_autoCommitDisabled() throws SQLException {
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public boolean isStreamingAutoCommitDisabled() {
+        return true;
+      }
+    };
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql.withConfig(config), _connection)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      try (Stream<String> stream = test.stream("SelectFoo", EmptySqlParams.INSTANCE, NAME_MAPPER)) {
+        assertEquals(false, _connection.getAutoCommit());
+        assertEquals(1, stream.count());
+      }
+      assertEquals(true, _connection.getAutoCommit());
+      test.queryStreaming("SelectFoo", EmptySqlParams.INSTANCE, rs -> assertEquals(false, _connection.getAutoCommit()));
+      assertEquals(true, _connection.getAutoCommit());
+    }
+  }
+
+  @Test
+  public void test_stream_missingVariable() throws SQLException {
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public boolean isStreamingAutoCommitDisabled() {
+        return true;
+      }
+    };
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql.withConfig(config), _connection)) {
+      assertThrows(IllegalArgumentException.class,
+          () -> test.stream("InsertFoo", new MapSqlParams("id", 1), NAME_MAPPER));
+      assertEquals(true, _connection.getAutoCommit());
+    }
+  }
+
+  @Test
+  public void test_statementCache() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection, 2)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      test.update("InsertFoo", new MapSqlParams("id", 2).with("name", "Beta"));
+      assertEquals(1, test.getCachedStatementCount());
+      test.query("SelectFoo", EmptySqlParams.INSTANCE, NAME_MAPPER);
+      test.query("SelectFoo", new MapSqlParams("name", "Beta"), NAME_MAPPER);
+      assertEquals(2, test.getCachedStatementCount());
+      List<String> result = test.query("SelectFoo", new MapSqlParams("min_id", 2), NAME_MAPPER);
+      assertEquals(Collections.singletonList("Beta"), result);
+      assertEquals(2, test.getCachedStatementCount());
+    }
+  }
+
+  @Test
+  public void test_statementCache_listener() {
+    ElSqlStatistics stats = new ElSqlStatistics();
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql.withListener(stats), _connection)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      test.update("InsertFoo", new MapSqlParams("id", 2).with("name", "Beta"));
+      test.update("InsertFoo", new MapSqlParams("id", 3).with("name", "Gamma"));
+      assertEquals(2, stats.getStatementCacheHits());
+      assertEquals(1, stats.getStatementCacheMisses());
+      assertEquals(3, stats.getFragmentStatistics("InsertFoo").getCount());
+    }
+  }
+
+  @Test
+  public void test_statementCache_disabled() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection, 0)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      assertEquals(0, test.getCachedStatementCount());
+      assertEquals(Collections.singletonList("Alpha"), test.query("SelectFoo", EmptySqlParams.INSTANCE, NAME_MAPPER));
+    }
+  }
+
+  @Test
+  public void test_dataSource() throws SQLException {
+    JDBCDataSource dataSource = new JDBCDataSource();
+    dataSource.setUrl("jdbc:hsqldb:mem:elsqljdbctest");
+    dataSource.setUser("SA");
+    Connection connection;
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, dataSource)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      connection = test.getConnection();
+    }
+    assertEquals(true, connection.isClosed());
+    assertEquals(false, _connection.isClosed());
+  }
+
+  @Test
+  public void test_missingVariable() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      assertThrows(IllegalArgumentException.class, () -> test.update("InsertFoo", new MapSqlParams("id", 1)));
+    }
+  }
+
+  @Test
+  public void test_sqlError() {
+    try (ElSqlJdbc test = ElSqlJdbc.of(_elsql, _connection)) {
+      test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha"));
+      UncheckedSQLException ex = assertThrows(
+          UncheckedSQLException.class, () -> test.update("InsertFoo", new MapSqlParams("id", 1).with("name", "Alpha")));
+      assertEquals(true, ex.getCause() instanceof SQLException);
+    }
+  }
+
+  @Test
+  public void test_nulls() {
+    assertThrows(IllegalArgumentException.class, () -> ElSqlJdbc.of(null, _connection));
+    assertThrows(IllegalArgumentException.class, () -> ElSqlJdbc.of(_elsql, (Connection) null));
+    assertThrows(IllegalArgumentException.class, () -> ElSqlJdbc.of(_elsql, _connection, -1));
+  }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class ElSqlRegistryTest {
+
+  @Test
+  public void test_global() {
+    assertSame(ElSqlRegistry.global(), ElSqlRegistry.global());
+  }
+
+  @Test
+  public void test_of() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    ElSql elsql1 = test.of(ElSqlConfig.DEFAULT, ElSql.class);
+    ElSql elsql2 = test.of(ElSqlConfig.DEFAULT, ElSql.class);
+    assertEquals(1, test.size());
+    assertEquals(ElSqlConfig.DEFAULT, elsql1.getConfig());
+    assertEquals("SELECT * FROM foo ", elsql1.getSql("TestFoo"));
+    assertEquals("SELECT * FROM foo ", elsql2.getSql("TestFoo"));
+  }
+
+  @Test
+  public void test_of_configsShareResources() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    ElSql defaultElSql = test.of(ElSqlConfig.DEFAULT, ElSql.class);
+    ElSql postgresElSql = test.of(ElSqlConfig.POSTGRES, ElSql.class);
+    assertEquals(1, test.size());
+    assertEquals(ElSqlConfig.DEFAULT, defaultElSql.getConfig());
+    assertEquals(ElSqlConfig.POSTGRES, postgresElSql.getConfig());
+    // HSQL has an override file, so a different set of resources
+    ElSql hsqlElSql = test.of(ElSqlConfig.HSQL, ElSql.class);
+    assertEquals(2, test.size());
+    assertEquals("SELECT * FROM bar, foo ", hsqlElSql.getSql("TestBar"));
+    assertEquals("SELECT * FROM bar ", postgresElSql.getSql("TestBar"));
+  }
+
+  @Test
+  public void test_of_layersShared() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    test.of(ElSqlConfig.DEFAULT, ElSql.class);
+    assertEquals(1, test.getLayerCount());
+    // the base file is shared with the HSQL bundle, only the override file is parsed
+    ElSql hsqlElSql = test.of(ElSqlConfig.HSQL, ElSql.class);
+    assertEquals(2, test.size());
+    assertEquals(2, test.getLayerCount());
+    assertEquals("SELECT * FROM bar, foo ", hsqlElSql.getSql("TestBar"));
+    assertEquals("SELECT * FROM foo ", hsqlElSql.getSql("TestFoo"));
+    // an override file alone is a separate bundle, sharing the layer
+    ElSql overrideOnly = test.parse(ElSqlConfig.HSQL, ElSql.class.getResource("ElSql-HSQL.elsql"));
+    assertEquals(3, test.size());
+    assertEquals(2, test.getLayerCount());
+    assertThrows(IllegalArgumentException.class, () -> overrideOnly.getSql("TestFoo"));
+  }
+
+  @Test
+  public void test_parse_concurrent() throws Exception {
+    ElSqlRegistry test = new ElSqlRegistry();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<ElSql>> futures = new ArrayList<Future<ElSql>>();
+      for (int i = 0; i < 32; i++) {
+        futures.add(executor.submit(() -> test.parse(ElSqlConfig.DEFAULT, ElSql.class.getResource("ElSql.elsql"))));
+      }
+      for (Future<ElSql> future : futures) {
+        assertEquals("SELECT * FROM bar ", future.get().getSql("TestBar"));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(1, test.size());
+  }
+
+  @Test
+  public void test_evict() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    test.of(ElSqlConfig.DEFAULT, ElSql.class);
+    test.of(ElSqlConfig.HSQL, ElSql.class);
+    assertEquals(0, test.evictUnused(1, TimeUnit.HOURS));
+    assertEquals(2, test.size());
+    assertEquals(2, test.getLayerCount());
+    assertEquals(2, test.evictUnused(0, TimeUnit.NANOSECONDS));
+    assertEquals(0, test.size());
+    assertEquals(0, test.getLayerCount());
+    test.of(ElSqlConfig.DEFAULT, ElSql.class);
+    test.clear();
+    assertEquals(0, test.size());
+    assertEquals(0, test.getLayerCount());
+  }
+
+  @Test
+  public void test_registerLibrary() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    test.registerLibrary("common", ElSqlRegistryTest.class.getResource("ElSqlLibrary.elsql"));
+    assertEquals(1, test.getLibraries().size());
+    ElSql elsql = test.parse(ElSqlConfig.DEFAULT, ElSqlRegistryTest.class.getResource("ElSql.elsql"));
+    assertEquals("SELECT id, name, created FROM foo ", elsql.getSql("common.SelectAll"));
+    assertEquals("SELECT * FROM foo ", elsql.getSql("TestFoo"));
+    assertThrows(IllegalArgumentException.class, () -> elsql.getSql("Columns"));
+  }
+
+  @Test
+  public void test_registerLibrary_unknownInclude() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    URL user = ElSqlRegistryTest.class.getResource("ElSqlLibraryUser.elsql");
+    assertThrows(IllegalArgumentException.class, () -> test.parse(ElSqlConfig.DEFAULT, user));
+    test.registerLibrary("other", ElSqlRegistryTest.class.getResource("ElSqlLibrary.elsql"));
+    assertThrows(IllegalArgumentException.class, () -> test.parse(ElSqlConfig.DEFAULT, user));
+    assertEquals(0, test.size());
+    test.registerLibrary("common", ElSqlRegistryTest.class.getResource("ElSqlLibrary.elsql"));
+    ElSql elsql = test.parse(ElSqlConfig.DEFAULT, user);
+    assertEquals("SELECT id, name, created FROM foo ", elsql.getSql("SelectFoo"));
+    assertEquals("SELECT id, name, created FROM foo ", elsql.getSql("SelectAll"));
+  }
+
+  @Test
+  public void test_registerLibrary_linkedPerBundle() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    test.registerLibrary("common", ElSqlRegistryTest.class.getResource("ElSqlLibrary.elsql"));
+    URL user = ElSqlRegistryTest.class.getResource("ElSqlLibraryUser.elsql");
+    // both bundles share the library and user layers
+    ElSql elsql1 = test.parse(ElSqlConfig.DEFAULT, user);
+    ElSql elsql2 = test.parse(ElSqlConfig.HSQL, user, ElSqlRegistryTest.class.getResource("ElSql.elsql"));
+    assertEquals(2, test.size());
+    assertEquals(2, test.getLayerCount());
+    for (ElSql elsql : Arrays.asList(elsql1, elsql2, elsql1.withConfig(ElSqlConfig.POSTGRES))) {
+      SqlFragments fragments = elsql.getFragments();
+      List<IncludeSqlFragment> includes = new ArrayList<IncludeSqlFragment>();
+      fragments.getFragment("SelectAll").findFragments(IncludeSqlFragment.class, includes);
+      fragments.getFragment("common.SelectAll").findFragments(IncludeSqlFragment.class, includes);
+      assertEquals(2, includes.size());
+      assertSame(fragments.getFragment("common.SelectAll"), fragments.getLinkedFragment(includes.get(0)));
+      assertSame(fragments.getFragment("common.Columns"), fragments.getLinkedFragment(includes.get(1)));
+      assertEquals("SELECT id, name, created FROM foo ", elsql.getSql("SelectAll"));
+    }
+  }
+
+  @Test
+  public void test_registerLibrary_relinks() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    test.parse(ElSqlConfig.DEFAULT, ElSqlRegistryTest.class.getResource("ElSql.elsql"));
+    assertEquals(1, test.size());
+    test.registerLibrary("common", ElSqlRegistryTest.class.getResource("ElSqlLibrary.elsql"));
+    assertEquals(0, test.size());
+    test.clear();
+    assertEquals(1, test.getLibraries().size());
+  }
+
+  @Test
+  public void test_registerLibrary_invalid() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    URL library = ElSqlRegistryTest.class.getResource("ElSqlLibrary.elsql");
+    assertThrows(IllegalArgumentException.class, () -> test.registerLibrary(null, library));
+    assertThrows(IllegalArgumentException.class, () -> test.registerLibrary("a.b", library));
+    assertThrows(IllegalArgumentException.class, () -> test.registerLibrary("", library));
+    assertThrows(IllegalArgumentException.class, () -> test.registerLibrary("common", null));
+  }
+
+  @Test
+  public void test_invalid() {
+    ElSqlRegistry test = new ElSqlRegistry();
+    assertThrows(IllegalArgumentException.class, () -> test.of(null, ElSql.class));
+    assertThrows(IllegalArgumentException.class, () -> test.of(ElSqlConfig.DEFAULT, null));
+    assertThrows(IllegalArgumentException.class, () -> test.of(ElSqlConfig.DEFAULT, ElSqlRegistryTest.class));
+    assertThrows(IllegalArgumentException.class, () -> test.parse(ElSqlConfig.DEFAULT, (URL[]) null));
+    assertThrows(IllegalArgumentException.class, () -> test.evictUnused(-1, TimeUnit.SECONDS));
+    assertEquals(0, test.size());
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class ElSqlShapeCardinalityTest {
+
+  @Test
+  public void test_sameShape() {
+    ElSqlShapeCardinality test = new ElSqlShapeCardinality();
+    ElSql elsql = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class).withListener(test);
+    for (int i = 0; i < 100; i++) {
+      elsql.getSql("TestFoo");
+    }
+    assertEquals(1, test.getCardinality("TestFoo"));
+    assertEquals(0, test.getCardinality("TestBar"));
+    assertEquals(1, test.getCardinalities().size());
+  }
+
+  @Test
+  public void test_estimate() {
+    ElSqlShapeCardinality test = new ElSqlShapeCardinality();
+    for (int n : new int[] {10, 1000, 100000}) {
+      test.reset();
+      for (int i = 0; i < n; i++) {
+        test.renderedShape("Test", "SELECT * FROM foo WHERE id IN (" + i + ")", 0);
+        test.renderedShape("Test", "SELECT * FROM foo WHERE id IN (" + i + ")", 0);
+      }
+      long estimate = test.getCardinality("Test");
+      assertTrue(Math.abs(estimate - n) <= n * 0.1d, "Estimate " + estimate + " for " + n);
+    }
+  }
+
+  @Test
+  public void test_threshold() {
+    List<String> alarms = new ArrayList<String>();
+    ElSqlShapeCardinality test = new ElSqlShapeCardinality(50, (name, cardinality) -> {
+      assertTrue(cardinality > 50);
+      alarms.add(name);
+    });
+    for (int i = 0; i < 1000; i++) {
+      test.renderedShape("Literal", "SELECT * FROM foo WHERE id = " + i, 0);
+      test.renderedShape("Bound", "SELECT * FROM foo WHERE id = :id", 0);
+    }
+    assertEquals(1, alarms.size());
+    assertEquals("Literal", alarms.get(0));
+    test.reset();
+    test.renderedShape("Literal", "SELECT 1", 0);
+    assertEquals(0, test.getCardinality("Bound"));
+  }
+
+  @Test
+  public void test_combined() {
+    ElSqlStatistics stats = new ElSqlStatistics();
+    ElSqlShapeCardinality shapes = new ElSqlShapeCardinality();
+    ElSql elsql = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class).withListener(ElSqlListener.combined(stats, shapes));
+    elsql.getSql("TestBar");
+    assertEquals(1, stats.getFragmentStatistics("TestBar").getCount());
+    assertEquals(1, shapes.getCardinality("TestBar"));
+  }
+
+  @Test
+  public void test_invalid() {
+    assertThrows(IllegalArgumentException.class, () -> new ElSqlShapeCardinality(-1, (name, cardinality) -> {}));
+    assertThrows(IllegalArgumentException.class, () -> new ElSqlShapeCardinality(1, null));
+    assertThrows(IllegalArgumentException.class, () -> ElSqlListener.combined((ElSqlListener[]) null));
+  }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.opengamma.elsql.ElSqlStatistics.FragmentStatistics;
+
+/**
+ * Test.
+ */
+public class ElSqlStatisticsTest {
+
+  @Test
+  public void test_withListener() {
+    ElSql base = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class);
+    assertNull(base.getListener());
+    ElSqlStatistics stats = new ElSqlStatistics();
+    ElSql test = base.withListener(stats);
+    assertSame(stats, test.getListener());
+    assertSame(stats, test.withConfig(ElSqlConfig.HSQL).getListener());
+    assertNull(test.withListener(null).getListener());
+  }
+
+  @Test
+  public void test_rendered() {
+    ElSqlStatistics stats = new ElSqlStatistics();
+    ElSql test = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class).withListener(stats);
+    test.getSql("TestFoo");
+    test.getSql("TestFoo");
+    test.getSql("TestBar");
+    FragmentStatistics foo = stats.getFragmentStatistics("TestFoo");
+    assertEquals("TestFoo", foo.getName());
+    assertEquals(2, foo.getCount());
+    assertEquals(2 * "SELECT * FROM foo ".length(), foo.getTotalLength());
+    assertTrue(foo.getTotalNanos() >= foo.getMaxNanos());
+    assertEquals(1, stats.getFragmentStatistics("TestBar").getCount());
+    assertEquals(2, stats.getFragmentStatistics().size());
+    assertNull(stats.getFragmentStatistics("TestPaged"));
+    stats.reset();
+    assertEquals(0, stats.getFragmentStatistics().size());
+  }
+
+  @Test
+  public void test_rendered_countAndChunked() {
+    ElSqlStatistics stats = new ElSqlStatistics();
+    ElSql test = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class).withListener(stats);
+    String countSql = test.getCountSql("TestPaged", EmptySqlParams.INSTANCE);
+    FragmentStatistics paged = stats.getFragmentStatistics("TestPaged");
+    assertEquals(1, paged.getCount());
+    assertEquals(countSql.length(), paged.getTotalLength());
+    
+    List<String> lines = Arrays.asList(
+        "@NAME(Insert)",
+        "  INSERT INTO foo (id)",
+        "  @VALUES(:rows)",
+        "    (:id)"
+    );
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getMaxValuesRows() {
+        return 2;
+      }
+    };
+    SqlFragments fragments = SqlFragments.parse(lines).withConfig(config).withListener(stats);
+    SqlParams[] rows = {new MapSqlParams("id", 1), new MapSqlParams("id", 2), new MapSqlParams("id", 3)};
+    List<SqlChunk> chunks = fragments.getChunkedSql("Insert", new MapSqlParams("rows", rows));
+    FragmentStatistics insert = stats.getFragmentStatistics("Insert");
+    assertEquals(2, insert.getCount());
+    assertEquals(chunks.get(0).getSql().length() + chunks.get(1).getSql().length(), insert.getTotalLength());
+  }
+
+  @Test
+  public void test_customListener() {
+    List<String> names = new ArrayList<String>();
+    ElSql test = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class).withListener((name, nanos, length) -> names.add(name));
+    test.getSql("TestBar");
+    assertEquals(1, names.size());
+    assertEquals("TestBar", names.get(0));
+  }
+
+  @Test
+  public void test_statementCache() {
+    ElSqlStatistics stats = new ElSqlStatistics();
+    assertEquals(0d, stats.getStatementCacheHitRate(), 0d);
+    stats.statementCacheLookup(false);
+    stats.statementCacheLookup(true);
+    stats.statementCacheLookup(true);
+    stats.statementCacheLookup(true);
+    assertEquals(3, stats.getStatementCacheHits());
+    assertEquals(1, stats.getStatementCacheMisses());
+    assertEquals(0.75d, stats.getStatementCacheHitRate(), 0d);
+  }
+
+}
@@ -9,6 +9,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
@@ -76,4 +79,50 @@ public class ElSqlTest {
     assertEquals("SELECT * FROM foo ", test.getSql("TestFoo", EmptySqlParams.INSTANCE));
   }
 
+  @Test
+  public void test_getCountSql() {
+    ElSql test = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class);
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("paging_offset", 20);
+    params.put("paging_fetch", 10);
+    assertEquals("SELECT * FROM foo ORDER BY id OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY ", test.getSql("TestPaged", params));
+    assertEquals("SELECT COUNT(*) FROM ( SELECT * FROM foo ) count_ ", test.getCountSql("TestPaged", params));
+    assertThrows(IllegalArgumentException.class, () -> test.getCountSql("TestFoo", params));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_getPositionalSql() {
+    ElSql test = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class);
+    PositionalSql sql = test.getPositionalSql("TestBind", new MapSqlParams("a", 1).with("b", "x"));
+    assertEquals("SELECT * FROM foo WHERE a = ? AND b = ? ", sql.getSql());
+    assertEquals(Arrays.asList("a", "b"), sql.getNames());
+    assertEquals(Arrays.asList(1, "x"), sql.getValues());
+  }
+
+  @Test
+  public void test_getPositionalSql_postgres() {
+    ElSql test = ElSql.of(ElSqlConfig.POSTGRES, ElSql.class);
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("a", null);
+    params.put("b", "x");
+    PositionalSql sql = test.getPositionalSql("TestBind", params);
+    assertEquals("SELECT * FROM foo WHERE a = $1 AND b = $2 ", sql.getSql());
+    assertEquals(Arrays.asList(null, "x"), sql.getValues());
+  }
+
+  @Test
+  public void test_getPositionalSql_sqlServer() {
+    ElSql test = ElSql.of(ElSqlConfig.SQL_SERVER_2008, ElSql.class);
+    PositionalSql sql = test.getPositionalSql("TestBind", new MapSqlParams("a", 1));
+    assertEquals("SELECT * FROM foo WHERE a = @p1 ", sql.getSql());
+    assertEquals(Arrays.asList(1), sql.getValues());
+  }
+
+  @Test
+  public void test_getPositionalSql_missingVariable() {
+    ElSql test = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class);
+    assertThrows(IllegalArgumentException.class, () -> test.getPositionalSql("TestBind", EmptySqlParams.INSTANCE));
+  }
+
 }
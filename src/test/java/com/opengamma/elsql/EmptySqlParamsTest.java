@@ -19,6 +19,7 @@ public class EmptySqlParamsTest {
     SqlParams test = EmptySqlParams.INSTANCE;
     assertEquals(false, test.contains("x"));
     assertEquals(null, test.get("x"));
+    assertEquals(SqlParams.NOT_FOUND, test.lookup("x"));
   }
 
 }
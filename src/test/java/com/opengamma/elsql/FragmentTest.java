@@ -106,6 +106,26 @@ public class FragmentTest {
     assertEquals("TextSqlFragment:test", test.toString());
   }
 
+  @Test
+  public void test_TextSqlFragment_merge() {
+    TextSqlFragment test = new TextSqlFragment("SELECT", true).merge(new TextSqlFragment("foo", false));
+    assertEquals("TextSqlFragment:SELECT foo", test.toString());
+  }
+
+  @Test
+  public void test_ContainerSqlFragment_mergesText() {
+    ContainerSqlFragment test = new ContainerSqlFragment();
+    test.addFragment(new TextSqlFragment("SELECT *", true));
+    test.addFragment(new TextSqlFragment("FROM foo", true));
+    test.addFragment(new ValueSqlFragment(":test", false));
+    test.addFragment(new TextSqlFragment("@LOOPINDEX", true));
+    assertEquals(3, test.getFragments().size());
+    assertEquals("TextSqlFragment:SELECT * FROM foo ", test.getFragments().get(0).toString());
+    StringBuilder buf = new StringBuilder();
+    test.getFragments().get(2).toSQL(buf, null, EmptySqlParams.INSTANCE, new int[] {3});
+    assertEquals("3 ", buf.toString());
+  }
+
   @Test
   public void test_TextSqlFragment_null() {
     assertThrows(IllegalArgumentException.class, () -> new TextSqlFragment(null, true));
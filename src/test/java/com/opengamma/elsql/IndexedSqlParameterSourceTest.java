@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+/**
+ * Test.
+ */
+public class IndexedSqlParameterSourceTest {
+
+  @Test
+  public void test_constructor_null() {
+    assertThrows(IllegalArgumentException.class, () -> new IndexedSqlParameterSource(null));
+  }
+
+  @Test
+  public void test_indexed() {
+    MapSqlParameterSource source = new MapSqlParameterSource();
+    source.addValue("ids", Arrays.asList(6, 7));
+    source.addValue("rows", new Object[] {Collections.singletonMap("id", "a"), new MapSqlParams("id", "b")});
+    source.addValue("ids1", 9, Types.INTEGER);
+    IndexedSqlParameterSource test = new IndexedSqlParameterSource(source);
+    assertEquals(true, test.hasValue("ids0"));
+    assertEquals(6, test.getValue("ids0"));
+    assertEquals(Types.INTEGER, test.getSqlType("ids1"));
+    assertEquals(9, test.getValue("ids1"));
+    assertEquals(SqlParameterSource.TYPE_UNKNOWN, test.getSqlType("ids0"));
+    assertEquals("b", test.getValue("rows1.id"));
+    assertEquals(false, test.hasValue("ids2"));
+    assertEquals(false, test.hasValue("rows0.name"));
+    assertThrows(IllegalArgumentException.class, () -> test.getValue("ids2"));
+  }
+
+  @Test
+  public void test_set() {
+    MapSqlParameterSource source = new MapSqlParameterSource("ids", new HashSet<Integer>(Arrays.asList(6, 7)));
+    IndexedSqlParameterSource test = new IndexedSqlParameterSource(source);
+    assertThrows(IllegalArgumentException.class, () -> test.getValue("ids0"));
+  }
+
+  @Test
+  public void test_namedParameterUtils() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id @IN(:ids) AND (",
+        "  @LOOP(:rows)",
+        "    name = :{rows@LOOPINDEX.name}",
+        "    @LOOPJOIN OR",
+        "  )"
+    );
+    SqlFragments bundle = SqlFragments.parse(Arrays.asList(lines), ElSqlConfig.HSQL);
+    MapSqlParameterSource source = new MapSqlParameterSource();
+    source.addValue("ids", Arrays.asList(6, 7, 8));
+    source.addValue("rows", Arrays.asList(
+        Collections.singletonMap("name", "a"), Collections.singletonMap("name", "b")));
+    String sql = bundle.getSql("Test1", new SpringSqlParams(source));
+    Object[] values = NamedParameterUtils.buildValueArray(
+        NamedParameterUtils.parseSqlStatement(sql), new IndexedSqlParameterSource(source), null);
+    assertArrayEquals(new Object[] {6, 7, 8, 8, "a", "b"}, values);
+  }
+
+}
@@ -40,6 +40,18 @@ public class MapSqlParamsTest {
     assertEquals("b", test.get("a"));
   }
 
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_lookup() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("a", "b");
+    map.put("n", null);
+    MapSqlParams test = new MapSqlParams(map);
+    assertEquals("b", test.lookup("a"));
+    assertEquals(null, test.lookup("n"));
+    assertEquals(SqlParams.NOT_FOUND, test.lookup("x"));
+  }
+
   //-------------------------------------------------------------------------
   @Test
   public void test_with() {
@@ -51,4 +63,25 @@ public class MapSqlParamsTest {
     assertEquals("b", test.get("a"));
   }
 
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_builder() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("c", "d");
+    MapSqlParams.Builder builder = MapSqlParams.builder().with("a", "b").withAll(map);
+    MapSqlParams test = builder.build();
+    assertEquals("b", test.get("a"));
+    assertEquals("d", test.get("c"));
+    assertEquals(false, test.contains("x"));
+    builder.with("x", "y");
+    assertEquals(false, test.contains("x"));
+    assertEquals("y", builder.build().get("x"));
+    assertEquals("f", test.with("e", "f").get("e"));
+  }
+
+  @Test
+  public void test_builder_withAll_null() {
+    assertThrows(IllegalArgumentException.class, () -> MapSqlParams.builder().withAll(null));
+  }
+
 }
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test.
+ */
+public class ParsedSqlTest {
+
+  @Test
+  public void test_parse() {
+    ParsedSql test = ParsedSql.parse("SELECT * FROM foo WHERE a = :a AND b = :{b} AND c = :${c} AND d IN (:a) ");
+    assertEquals("SELECT * FROM foo WHERE a = ? AND b = ? AND c = ? AND d IN (?) ", test.getSql());
+    assertEquals(Arrays.asList("a", "b", "${c}", "a"), test.getNames());
+  }
+
+  @Test
+  public void test_parse_notVariables() {
+    ParsedSql test = ParsedSql.parse("SELECT a::text, ':b', \"c:d\", e : f FROM foo WHERE g = :g");
+    assertEquals("SELECT a::text, ':b', \"c:d\", e : f FROM foo WHERE g = ?", test.getSql());
+    assertEquals(Collections.singletonList("g"), test.getNames());
+  }
+
+  @Test
+  public void test_parse_arrayMarkers() {
+    ParsedSql test = ParsedSql.parse(
+        "SELECT * FROM foo WHERE a = ANY(:a) AND b IN (UNNEST( :b )) AND c = :c AND d IN (:d) AND e = any (:e)");
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), test.getNames());
+    assertEquals(true, test.isArray(0));
+    assertEquals(true, test.isArray(1));
+    assertEquals(false, test.isArray(2));
+    assertEquals(false, test.isArray(3));
+    assertEquals(true, test.isArray(4));
+  }
+
+  @Test
+  public void test_getValues() {
+    ParsedSql test = ParsedSql.parse("SELECT * FROM foo WHERE a = :a AND b = :b");
+    MapSqlParams params = new MapSqlParams("a", 1).with("b", null);
+    assertArrayEquals(new Object[] {1, null}, test.getValues(params));
+    assertThrows(IllegalArgumentException.class, () -> test.getValues(new MapSqlParams("a", 1)));
+  }
+
+  @Test
+  public void test_replaceVariables() {
+    String test = ParsedSql.replaceVariables("SELECT ':a' FROM foo WHERE a = :a AND b = :{b}",
+        name -> name.equals("a") ? ":x" : null);
+    assertEquals("SELECT ':a' FROM foo WHERE a = :x AND b = :{b}", test);
+  }
+
+}
@@ -8,7 +8,12 @@ package com.opengamma.elsql;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 
 /**
@@ -27,6 +32,47 @@ public class SpringSqlParamsTest {
     assertEquals(null, test.get("x"));
   }
 
+  @Test
+  public void test_lookup_mapSource() {
+    MapSqlParameterSource source = new MapSqlParameterSource();
+    source.addValue("a", "b");
+    source.addValue("n", null);
+    SpringSqlParams test = new SpringSqlParams(source);
+    assertEquals("b", test.lookup("a"));
+    assertEquals(null, test.lookup("n"));
+    assertEquals(SqlParams.NOT_FOUND, test.lookup("x"));
+    source.addValue("x", "y");
+    assertEquals("y", test.lookup("x"));
+  }
+
+  @Test
+  public void test_lookup_beanSource() {
+    SpringSqlParams test = new SpringSqlParams(new BeanPropertySqlParameterSource(new Date(3L)));
+    assertEquals(3L, test.lookup("time"));
+    assertEquals(SqlParams.NOT_FOUND, test.lookup("x"));
+    assertEquals(null, test.get("x"));
+  }
+
+  @Test
+  public void test_in_positional() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id @IN(:ids) AND type = :type"
+    );
+    MapSqlParameterSource source = new MapSqlParameterSource();
+    source.addValue("ids", Arrays.asList(6, 7, 8));
+    source.addValue("type", "A");
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SpringSqlParams params = new SpringSqlParams(source);
+    assertEquals("SELECT * FROM foo WHERE id IN (:ids0, :ids1, :ids2, :ids2) AND type = :type ",
+        bundle.getSql("Test1", params));
+    // the padded variables are not in the source, but are resolved by the positional SQL
+    assertEquals(false, source.hasValue("ids0"));
+    PositionalSql positional = bundle.getPositionalSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE id IN (?, ?, ?, ?) AND type = ? ", positional.getSql());
+    assertEquals(Arrays.asList(6, 7, 8, 8, "A"), positional.getValues());
+  }
+
   @Test
   public void test_constructor_Map_null() {
     assertThrows(IllegalArgumentException.class, () -> new SpringSqlParams(null));
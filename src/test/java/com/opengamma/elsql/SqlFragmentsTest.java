@@ -6,13 +6,17 @@
 package com.opengamma.elsql;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
@@ -196,8 +200,197 @@ public class SqlFragmentsTest {
         "  SELECT * FROM @INCLUDE(Table) WHERE TRUE",
         "  "
     );
+    assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(lines));
+  }
+
+  @Test
+  public void test_insert_name_linked() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM @INCLUDE(Table) WHERE TRUE",
+        "@NAME(Table)",
+        "  foo"
+    );
     SqlFragments bundle = SqlFragments.parse(lines);
-    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", EmptySqlParams.INSTANCE));
+    SqlFragments other = bundle.withConfig(ElSqlConfig.HSQL);
+    assertEquals("SELECT * FROM foo WHERE TRUE ", other.getSql("Test1", EmptySqlParams.INSTANCE));
+    IncludeSqlFragment include = bundle.getFragment("Test1").findFragment(IncludeSqlFragment.class);
+    assertEquals(true, include.isStatic());
+  }
+
+  @Test
+  public void test_insert_name_override() {
+    List<String> base = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM @INCLUDE(Table) WHERE TRUE",
+        "@NAME(Table)",
+        "  foo"
+    );
+    List<String> override = Arrays.asList(
+        "@NAME(Table)",
+        "  bar"
+    );
+    Map<String, NameSqlFragment> baseLayer = SqlFragments.parseLayer(base, "base");
+    Map<String, NameSqlFragment> overrideLayer = SqlFragments.parseLayer(override, "override");
+    SqlFragments bundle1 = SqlFragments.merge(Arrays.asList(baseLayer), ElSqlConfig.DEFAULT);
+    SqlFragments bundle2 = SqlFragments.merge(Arrays.asList(baseLayer, overrideLayer), ElSqlConfig.DEFAULT);
+    assertEquals("SELECT * FROM foo WHERE TRUE ", bundle1.getSql("Test1", EmptySqlParams.INSTANCE));
+    assertEquals("SELECT * FROM bar WHERE TRUE ", bundle2.getSql("Test1", EmptySqlParams.INSTANCE));
+    // the shared include is linked separately in each bundle
+    IncludeSqlFragment include = baseLayer.get("Test1").findFragment(IncludeSqlFragment.class);
+    assertSame(baseLayer.get("Table"), bundle1.getLinkedFragment(include));
+    assertSame(overrideLayer.get("Table"), bundle2.getLinkedFragment(include));
+    assertEquals("SELECT * FROM foo WHERE TRUE ", bundle1.getSql("Test1", EmptySqlParams.INSTANCE));
+  }
+
+  @Test
+  public void test_insert_name_cycle() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM @INCLUDE(Table) WHERE TRUE",
+        "@NAME(Table)",
+        "  foo @INCLUDE(Other)",
+        "@NAME(Other)",
+        "  @INCLUDE(Table)"
+    );
+    IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(lines));
+    assertEquals("Cyclic @INCLUDE: Table -> Other -> Table", ex.getMessage());
+  }
+
+  @Test
+  public void test_insert_name_selfCycle() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM @INCLUDE(Test1)"
+    );
+    assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(lines));
+  }
+
+  //-------------------------------------------------------------------------
+  private static final ElSqlConfig COMPILED = ElSqlConfig.DEFAULT.withCompiledRendering(true);
+
+  @Test
+  public void test_compiled_matchesInterpreted() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Columns)",
+        "  id, name",
+        "@NAME(Select)",
+        "  SELECT @INCLUDE(Columns)",
+        "  FROM foo",
+        "  @WHERE",
+        "    @AND(:id)",
+        "      id = :id",
+        "    @AND(:name)",
+        "      name @LIKE :name",
+        "    @OR(:type = A)",
+        "      type = 'A'",
+        "  @IF(:sort)",
+        "    ORDER BY @INCLUDE(:sort)",
+        "@NAME(Paged)",
+        "  @PAGING(:paging_offset, :paging_fetch)",
+        "    @INCLUDE(Select)",
+        "@NAME(Loop)",
+        "  SELECT * FROM foo WHERE",
+        "  @LOOP(:size)",
+        "    @IF(:a@LOOPINDEX)",
+        "      a = :a@LOOPINDEX",
+        "    @LOOPJOIN OR",
+        "@NAME(Empty)",
+        "  @IF(:missing)",
+        "    x"
+    );
+    SqlFragments interpreted = SqlFragments.parse(lines);
+    SqlFragments compiled = interpreted.withConfig(COMPILED);
+    List<SqlParams> paramsList = Arrays.asList(
+        new MapSqlParams("size", 0),
+        new MapSqlParams("size", 1).with("id", 1),
+        new MapSqlParams("size", 1).with("name", "A%").with("type", "a").with("sort", "Columns"),
+        new MapSqlParams("size", 2).with("id", 1).with("name", "B").with("paging_offset", 20).with("paging_fetch", 10),
+        new MapSqlParams("size", 3).with("a0", 1).with("a2", true));
+    for (SqlParams params : paramsList) {
+      for (String name : Arrays.asList("Columns", "Select", "Paged", "Loop", "Empty")) {
+        assertEquals(interpreted.getSql(name, params), compiled.getSql(name, params));
+      }
+      assertEquals(interpreted.getCountSql("Paged", params), compiled.getCountSql("Paged", params));
+    }
+    assertEquals("SELECT id, name FROM foo WHERE id = :id ", compiled.getSql("Select", new MapSqlParams("id", 1)));
+  }
+
+  @Test
+  public void test_compiled_cachedAndShared() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Columns)",
+        "  id, name",
+        "@NAME(Select)",
+        "  SELECT @INCLUDE(Columns)",
+        "  FROM foo"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(COMPILED);
+    NameSqlFragment select = bundle.getFragment("Select");
+    SqlRenderer renderer = bundle.getCompiled(select);
+    assertSame(renderer, bundle.getCompiled(select));
+    assertSame(renderer, bundle.withConfig(ElSqlConfig.HSQL).getCompiled(select));
+    // the include is merged into the literal text, so rendering ignores the parameters
+    StringBuilder buf = new StringBuilder();
+    renderer.render(buf, bundle, null, SqlFragments.NO_LOOP);
+    assertEquals("SELECT id, name FROM foo ", buf.toString());
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_canonicalText() {
+    ElSqlConfig config = new ElSqlConfig("Canonical") {
+      @Override
+      public boolean isCanonicalText() {
+        return true;
+      }
+    };
+    List<String> lines1 = Arrays.asList(
+        "@NAME(Test1)",
+        "  select  id,name",
+        "  from foo WHERE  id IN ( :id )"
+    );
+    List<String> lines2 = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT id, name FROM foo",
+        "  WHERE id IN (:id)"
+    );
+    String sql1 = SqlFragments.parse(Arrays.asList(lines1), config).getSql("Test1", EmptySqlParams.INSTANCE);
+    String sql2 = SqlFragments.parse(Arrays.asList(lines2), config).getSql("Test1", EmptySqlParams.INSTANCE);
+    assertEquals("SELECT id, name FROM foo WHERE id IN (:id) ", sql1);
+    assertEquals(sql1, sql2);
+    String sql3 = SqlFragments.parse(lines1).getSql("Test1", EmptySqlParams.INSTANCE);
+    assertEquals("select  id,name from foo WHERE  id IN ( :id ) ", sql3);
+  }
+
+  @Test
+  public void test_canonicalText_acrossLines() {
+    ElSqlConfig config = new ElSqlConfig("Canonical") {
+      @Override
+      public boolean isCanonicalText() {
+        return true;
+      }
+    };
+    List<String> lines1 = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id IN (",
+        "    :x, :y",
+        "  )",
+        "  @AND(:z)",
+        "    z = (",
+        "      :z )"
+    );
+    List<String> lines2 = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id IN (:x, :y)",
+        "  @AND(:z)",
+        "    z = (:z)"
+    );
+    SqlParams params = new MapSqlParams("z", 1);
+    String sql1 = SqlFragments.parse(Arrays.asList(lines1), config).getSql("Test1", params);
+    String sql2 = SqlFragments.parse(Arrays.asList(lines2), config).getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE id IN (:x, :y) AND z = (:z) ", sql1);
+    assertEquals(sql1, sql2);
   }
 
   //-------------------------------------------------------------------------
@@ -240,6 +433,41 @@ public class SqlFragmentsTest {
     assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", EmptySqlParams.INSTANCE));
   }
 
+  @Test
+  public void test_include_variable_cycle() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM @INCLUDE(:var) WHERE TRUE",
+        "@NAME(Table)",
+        "  foo"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    IllegalArgumentException ex = assertThrows(
+        IllegalArgumentException.class, () -> bundle.getSql("Test1", new MapSqlParams("var", "Test1")));
+    assertEquals("Maximum @INCLUDE depth of 64 exceeded including Test1", ex.getMessage());
+    // depth is restored after the failure
+    assertEquals("SELECT * FROM foo WHERE TRUE ", bundle.getSql("Test1", new MapSqlParams("var", "Table")));
+  }
+
+  @Test
+  public void test_include_variable_maxDepth() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM @INCLUDE(:var) WHERE TRUE",
+        "@NAME(Table)",
+        "  foo"
+    );
+    ElSqlConfig config = new ElSqlConfig("Shallow") {
+      @Override
+      public int getMaxIncludeDepth() {
+        return 1;
+      }
+    };
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(config);
+    assertEquals("SELECT * FROM foo WHERE TRUE ", bundle.getSql("Test1", new MapSqlParams("var", "Table")));
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", new MapSqlParams("var", "Test1")));
+  }
+
   @Test
   public void test_include_invalidFormat1() {
     List<String> lines = Arrays.asList(
@@ -528,6 +756,111 @@ public class SqlFragmentsTest {
     assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(lines));
   }
 
+  @Test
+  public void test_paging_bindPaging() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  @PAGING(:offset, :fetch)",
+        "    SELECT * FROM foo ORDER BY bar "
+    );
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(ElSqlConfig.DEFAULT.withBindPaging(true));
+    String sql1 = bundle.getSql("Test1", new MapSqlParams("offset", 7).with("fetch", 3));
+    assertEquals("SELECT * FROM foo ORDER BY bar OFFSET :offset ROWS FETCH NEXT :fetch ROWS ONLY ", sql1);
+    String sql2 = bundle.getSql("Test1", new MapSqlParams("offset", 17).with("fetch", 3));
+    assertEquals(sql1, sql2);
+    String sql3 = bundle.getSql("Test1", new MapSqlParams("offset", 0).with("fetch", 3));
+    assertEquals("SELECT * FROM foo ORDER BY bar FETCH FIRST :fetch ROWS ONLY ", sql3);
+  }
+
+  @Test
+  public void test_offsetFetch_bindPaging() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo",
+        "  @OFFSETFETCH(8, :fetch)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(ElSqlConfig.MYSQL.withBindPaging(true));
+    String sql1 = bundle.getSql("Test1", new MapSqlParams("fetch", 3));
+    assertEquals("SELECT * FROM foo LIMIT :fetch OFFSET 8 ", sql1);
+  }
+
+  @Test
+  public void test_paging_count() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  @PAGING(:offset, :fetch)",
+        "    SELECT * FROM foo",
+        "    WHERE id IN (SELECT id FROM bar ORDER BY id)",
+        "      @AND(:name)",
+        "        name = :name",
+        "    ORDER BY bar "
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("offset", 7).with("fetch", 3).with("name", "x");
+    String sql1 = bundle.getCountSql("Test1", params);
+    assertEquals("SELECT COUNT(*) FROM ( SELECT * FROM foo WHERE id IN (SELECT id FROM bar ORDER BY id) " +
+        "AND name = :name ) count_ ", sql1);
+    String sql2 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE id IN (SELECT id FROM bar ORDER BY id) " +
+        "AND name = :name ORDER BY bar OFFSET 7 ROWS FETCH NEXT 3 ROWS ONLY ", sql2);
+  }
+
+  @Test
+  public void test_paging_count_orderByRetained() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  @PAGING(:offset, :fetch)",
+        "    SELECT * FROM foo ORDER BY bar LIMIT 10"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    String sql1 = bundle.getCountSql("Test1", EmptySqlParams.INSTANCE);
+    assertEquals("SELECT COUNT(*) FROM ( SELECT * FROM foo ORDER BY bar LIMIT 10 ) count_ ", sql1);
+  }
+
+  @Test
+  public void test_paging_count_notSelect() {
+    List<String> lines = Arrays.asList(
+        "@NAME(With)",
+        "  @PAGING(:offset, :fetch)",
+        "    WITH x AS (SELECT * FROM bar) SELECT * FROM x",
+        "@NAME(Comment)",
+        "  @PAGING(:offset, :fetch)",
+        "    /* comment */ SELECT * FROM foo"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    IllegalArgumentException ex = assertThrows(
+        IllegalArgumentException.class, () -> bundle.getCountSql("With", EmptySqlParams.INSTANCE));
+    assertEquals("@PAGING block must start with SELECT to be counted: WITH x AS (SELECT * FROM bar) SELECT * FROM x ",
+        ex.getMessage());
+    assertThrows(IllegalArgumentException.class, () -> bundle.getCountSql("Comment", EmptySqlParams.INSTANCE));
+    // paging is still not applied, as before
+    assertEquals("WITH x AS (SELECT * FROM bar) SELECT * FROM x ", bundle.getSql("With", EmptySqlParams.INSTANCE));
+  }
+
+  @Test
+  public void test_paging_count_include() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  @INCLUDE(Paged)",
+        "@NAME(Paged)",
+        "  @PAGING(:offset, :fetch)",
+        "    SELECT * FROM foo ORDER BY bar"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    assertEquals("SELECT COUNT(*) FROM ( SELECT * FROM foo ) count_ ",
+        bundle.getCountSql("Test1", EmptySqlParams.INSTANCE));
+  }
+
+  @Test
+  public void test_paging_count_noPaging() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo ORDER BY bar"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    assertThrows(IllegalArgumentException.class, () -> bundle.getCountSql("Test1", EmptySqlParams.INSTANCE));
+  }
+
   //-------------------------------------------------------------------------
   @Test
   public void test_fetch_defaultVar() {
@@ -568,6 +901,87 @@ public class SqlFragmentsTest {
     assertEquals("SELECT * FROM foo FETCH FIRST 5 ROWS ONLY ENDFOO ", sql1);
   }
 
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_keyset_firstPage() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo",
+        "  WHERE type = :type",
+        "    @AND(:last_id)",
+        "      @KEYSET(created :last_created, id :last_id)",
+        "  ORDER BY created, id",
+        "  @FETCH"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("paging_fetch", 3);
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE type = :type ORDER BY created, id FETCH FIRST 3 ROWS ONLY ", sql1);
+  }
+
+  @Test
+  public void test_keyset_nextPage() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo",
+        "  WHERE type = :type",
+        "    @AND(:last_id)",
+        "      @KEYSET(created :last_created, id :last_id)",
+        "  ORDER BY created, id",
+        "  @FETCH"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("paging_fetch", 3).with("last_id", 6).with("last_created", new Date(0));
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE type = :type AND (created, id) > (:last_created, :last_id) " +
+        "ORDER BY created, id FETCH FIRST 3 ROWS ONLY ", sql1);
+  }
+
+  @Test
+  public void test_keyset_oracle() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo",
+        "  WHERE @KEYSET(created :last_created, id :last_id)",
+        "  ORDER BY created, id"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(ElSqlConfig.ORACLE);
+    String sql1 = bundle.getSql("Test1", EmptySqlParams.INSTANCE);
+    assertEquals("SELECT * FROM foo WHERE " +
+        "(created > :last_created OR (created = :last_created AND id > :last_id)) ORDER BY created, id ", sql1);
+  }
+
+  @Test
+  public void test_keyset_singleColumnDescending() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE @KEYSET(f.id :{last_id} DESC) ORDER BY f.id DESC"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    String sql1 = bundle.getSql("Test1", EmptySqlParams.INSTANCE);
+    assertEquals("SELECT * FROM foo WHERE f.id < :{last_id} ORDER BY f.id DESC ", sql1);
+  }
+
+  @Test
+  public void test_keyset_mixedDirection() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE @KEYSET(a :a DESC, b :b, c :c)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    String sql1 = bundle.getSql("Test1", EmptySqlParams.INSTANCE);
+    assertEquals("SELECT * FROM foo WHERE (a < :a OR (a = :a AND b > :b OR (a = :a AND b = :b AND c > :c))) ", sql1);
+  }
+
+  @Test
+  public void test_keyset_invalidFormat1() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE @KEYSET(a, b)"
+    );
+    assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(lines));
+  }
+
   //-------------------------------------------------------------------------
   @Test
   public void test_if_varAbsent() {
@@ -1417,6 +1831,191 @@ public class SqlFragmentsTest {
     assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", params));
   }
 
+  @Test
+  public void test_loop_list() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id IN (",
+        "  @LOOP(:ids)",
+        "    :ids@LOOPINDEX",
+        "    @LOOPJOIN ,",
+        "  )"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("ids", Arrays.asList(6, 7, 8));
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE id IN ( :ids0 , :ids1 , :ids2 ) ", sql1);
+    PositionalSql positional = bundle.getPositionalSql("Test1", params);
+    assertEquals(Arrays.asList("ids0", "ids1", "ids2"), positional.getNames());
+    assertEquals(Arrays.asList(6, 7, 8), positional.getValues());
+  }
+
+  @Test
+  public void test_loop_set_rejected() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id IN (",
+        "  @LOOP(:ids)",
+        "    :ids@LOOPINDEX",
+        "    @LOOPJOIN ,",
+        "  )"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("ids", new LinkedHashSet<Integer>(Arrays.asList(6, 7, 8)));
+    IllegalArgumentException ex =
+        assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", params));
+    assertEquals("Loop size variable must be Number, String, List or array: :ids", ex.getMessage());
+    // an indexed name over a set cannot be bound
+    assertThrows(IllegalArgumentException.class, () -> IndexedSqlParams.lookupIndexed(params, "ids0"));
+  }
+
+  @Test
+  public void test_loop_array_value() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE",
+        "  @LOOP(:names)",
+        "    name = @VALUE(:names@LOOPINDEX)",
+        "    @LOOPJOIN OR"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("names", new String[] {"bob", "doctor"});
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE name = bob OR name = doctor ", sql1);
+    assertEquals("SELECT * FROM foo WHERE ", bundle.getSql("Test1", new MapSqlParams("names", new int[0])));
+  }
+
+  @Test
+  public void test_loop_list_properties() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE",
+        "  @LOOP(:rows)",
+        "    (a = :{rows@LOOPINDEX.a} AND b = @VALUE(:{rows@LOOPINDEX.b}))",
+        "    @LOOPJOIN OR"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    HashMap<String, Object> row0 = new HashMap<String, Object>();
+    row0.put("a", "name");
+    row0.put("b", "bob");
+    List<Object> rows = Arrays.asList(row0, new MapSqlParams("a", "type").with("b", "doctor"));
+    SqlParams params = new MapSqlParams("rows", rows);
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE (a = :{rows0.a} AND b = bob) OR (a = :{rows1.a} AND b = doctor) ", sql1);
+    assertEquals(Arrays.asList("name", "type"), bundle.getPositionalSql("Test1", params).getValues());
+  }
+
+  @Test
+  public void test_loop_list_beanProperties() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE",
+        "  @LOOP(:rows)",
+        "    a = @VALUE(:{rows@LOOPINDEX.simpleName})",
+        "    @LOOPJOIN OR"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("rows", Arrays.asList(String.class, Integer.class));
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE a = String OR a = Integer ", sql1);
+    assertEquals(sql1, bundle.getSql("Test1", params));
+  }
+
+  @Test
+  public void test_loop_list_beanProperties_isPrefix() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE",
+        "  @LOOP(:rows)",
+        "    a = @VALUE(:{rows@LOOPINDEX.array})",
+        "    @LOOPJOIN OR"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("rows", Arrays.asList(String.class, int[].class));
+    assertEquals("SELECT * FROM foo WHERE a = false OR a = true ", bundle.getSql("Test1", params));
+  }
+
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_in() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id @IN(:ids) AND type = :type"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    MapSqlParams params = new MapSqlParams("ids", Arrays.asList(6, 7, 8)).with("type", "A");
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("SELECT * FROM foo WHERE id IN (:ids0, :ids1, :ids2, :ids2) AND type = :type ", sql1);
+    assertEquals(Arrays.asList(6, 7, 8, 8, "A"), bundle.getPositionalSql("Test1", params).getValues());
+    String sql2 = bundle.getSql("Test1", params.with("ids", new long[] {6, 7, 8, 9}));
+    assertEquals("SELECT * FROM foo WHERE id IN (:ids0, :ids1, :ids2, :ids3) AND type = :type ", sql2);
+    String sql3 = bundle.getSql("Test1", params.with("ids", new Object[0]));
+    assertEquals("SELECT * FROM foo WHERE id IN (NULL) AND type = :type ", sql3);
+  }
+
+  @Test
+  public void test_in_postgres() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id @IN(:ids)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(ElSqlConfig.POSTGRES);
+    String sql1 = bundle.getSql("Test1", new MapSqlParams("ids", Arrays.asList(6, 7, 8)));
+    assertEquals("SELECT * FROM foo WHERE id = ANY(:ids) ", sql1);
+    String sql2 = bundle.getSql("Test1", new MapSqlParams("ids", Collections.emptyList()));
+    assertEquals("SELECT * FROM foo WHERE id IN (NULL) ", sql2);
+  }
+
+  @Test
+  public void test_in_invalid() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id @IN(:ids)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", EmptySqlParams.INSTANCE));
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", new MapSqlParams("ids", 6)));
+    assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo WHERE id @IN(ids)")));
+  }
+
+  @Test
+  public void test_in_tempTable_collectedWhenRendered() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  SELECT * FROM foo",
+        "  @WHERE",
+        "    @AND(:ids)",
+        "      id @IN(:ids)",
+        "    @AND(:codes)",
+        "      @INCLUDE(Codes)",
+        "@NAME(Codes)",
+        "  code @IN(:codes)"
+    );
+    SqlFragments bundle = SqlFragments.parse(Arrays.asList(lines), ElSqlConfig.MYSQL);
+    List<Integer> ids = Collections.nCopies(1001, 6);
+    List<String> codes = Collections.nCopies(1001, "A");
+    // only the IN tags that are output are collected, including those within an include
+    Map<String, Object[]> tables = new HashMap<String, Object[]>();
+    String sql = SqlRenderContext.render(tables, () -> bundle.getSql("Test1", new MapSqlParams("codes", codes)));
+    assertEquals("SELECT * FROM foo WHERE code IN (SELECT elsql_key FROM elsql_in_codes_varchar_4000) ", sql);
+    assertEquals(Collections.singleton("elsql_in_codes_varchar_4000"), tables.keySet());
+    assertEquals(1001, tables.get("elsql_in_codes_varchar_4000").length);
+    tables.clear();
+    SqlRenderContext.render(tables, () -> bundle.getSql("Test1", new MapSqlParams("ids", ids)));
+    assertEquals(Collections.singleton("elsql_in_ids_integer"), tables.keySet());
+    tables.clear();
+    SqlRenderContext.render(tables, () -> bundle.getSql("Test1", new MapSqlParams("ids", ids.subList(0, 3))));
+    assertEquals(Collections.emptySet(), tables.keySet());
+    // without a context the tables would never be filled, so the large list is rejected
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", new MapSqlParams("ids", ids)));
+    assertEquals(null, SqlRenderContext.current());
+    // a list at the threshold does not need a context
+    String small = bundle.getSql("Test1", new MapSqlParams("ids", ids.subList(0, 1000)));
+    assertEquals(true, small.startsWith("SELECT * FROM foo WHERE id IN (:ids0, :ids1, "), small);
+  }
+
   @Test
   public void test_loopInLoopWithJoin() {
     List<String> lines = Arrays.asList(
@@ -1438,4 +2037,241 @@ public class SqlFragmentsTest {
         "AND (a = :a1 AND b = :b0) OR (a = :a1 AND b = :b1) ", sql1);
   }
 
+  //-------------------------------------------------------------------------
+  @Test
+  public void test_values() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id, name, batch)",
+        "  @VALUES(:rows)",
+        "    (:id, :name, :batch)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    List<SqlParams> rows = new ArrayList<SqlParams>();
+    rows.add(new MapSqlParams("id", 1).with("name", "A"));
+    rows.add(new MapSqlParams("id", 2).with("name", "B"));
+    SqlParams params = new MapSqlParams("rows", rows).with("batch", 6);
+    String sql1 = bundle.getSql("Test1", params);
+    assertEquals("INSERT INTO foo (id, name, batch) " +
+        "VALUES (:rows_0_id, :rows_0_name, :batch), (:rows_1_id, :rows_1_name, :batch) ", sql1);
+  }
+
+  @Test
+  public void test_values_perRow() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id, name)",
+        "  @VALUES(:rows)",
+        "    (:id,",
+        "    @IF(:type = A)",
+        "      :name",
+        "    @IF(:type = B)",
+        "      'none'",
+        "    )"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    List<SqlParams> rows = new ArrayList<SqlParams>();
+    rows.add(new MapSqlParams("id", 1).with("type", "B"));
+    rows.add(new MapSqlParams("id", 2).with("type", "A").with("name", "B"));
+    rows.add(new MapSqlParams("id", 3).with("type", "A"));
+    String sql1 = bundle.getSql("Test1", new MapSqlParams("rows", rows).with("name", "Outer").with("type", "A"));
+    assertEquals("INSERT INTO foo (id, name) " +
+        "VALUES (:rows_0_id, 'none' ), (:rows_1_id, :rows_1_name ), (:rows_2_id, :name ) ", sql1);
+  }
+
+  @Test
+  public void test_values_rowsWithDifferentVariables() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id, name)",
+        "  @VALUES(:rows)",
+        "    (:id, :name)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    List<SqlParams> rows = new ArrayList<SqlParams>();
+    rows.add(new MapSqlParams("id", 1));
+    rows.add(new MapSqlParams("id", 2).with("name", "B"));
+    String sql1 = bundle.getSql("Test1", new MapSqlParams("rows", rows).with("name", "Outer"));
+    assertEquals("INSERT INTO foo (id, name) " +
+        "VALUES (:rows_0_id, :name), (:rows_1_id, :rows_1_name) ", sql1);
+  }
+
+  @Test
+  public void test_values_chunked_perRow() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id, name)",
+        "  @VALUES(:rows)",
+        "    (:id,",
+        "    @IF(:type = A)",
+        "      :name",
+        "    @IF(:type = B)",
+        "      NULL",
+        "    )"
+    );
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getMaxBindParameters() {
+        return 5;
+      }
+    };
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(config);
+    List<SqlParams> rows = new ArrayList<SqlParams>();
+    rows.add(new MapSqlParams("id", 0).with("type", "B"));
+    for (int i = 1; i < 5; i++) {
+      rows.add(new MapSqlParams("id", i).with("type", "A").with("name", "N" + i));
+    }
+    // the first row has one variable, but the others have two, so two rows fit in each chunk
+    List<SqlChunk> chunks = bundle.getChunkedSql("Test1", new MapSqlParams("rows", rows));
+    assertEquals(3, chunks.size());
+    assertEquals("INSERT INTO foo (id, name) VALUES (:rows_0_id, NULL ), (:rows_1_id, :rows_1_name ) ",
+        chunks.get(0).getSql());
+    String full = "INSERT INTO foo (id, name) VALUES (:rows_0_id, :rows_0_name ), (:rows_1_id, :rows_1_name ) ";
+    assertEquals(full, chunks.get(1).getSql());
+    assertEquals("INSERT INTO foo (id, name) VALUES (:rows_0_id, :rows_0_name ) ", chunks.get(2).getSql());
+    assertEquals("N2", chunks.get(1).getParams().get("rows_0_name"));
+    assertEquals("N4", chunks.get(2).getParams().get("rows_0_name"));
+  }
+
+  @Test
+  public void test_values_chunked() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id, name, batch)",
+        "  @VALUES(:rows)",
+        "    (:id, :name, :batch)"
+    );
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getMaxBindParameters() {
+        return 9;
+      }
+    };
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(config);
+    List<Object> rows = new ArrayList<Object>();
+    for (int i = 0; i < 7; i++) {
+      HashMap<String, Object> row = new HashMap<String, Object>();
+      row.put("id", i);
+      row.put("name", "N" + i);
+      rows.add(row);
+    }
+    List<SqlChunk> chunks = bundle.getChunkedSql("Test1", new MapSqlParams("rows", rows).with("batch", 6));
+    assertEquals(3, chunks.size());
+    String full = "INSERT INTO foo (id, name, batch) VALUES (:rows_0_id, :rows_0_name, :batch), " +
+        "(:rows_1_id, :rows_1_name, :batch), (:rows_2_id, :rows_2_name, :batch) ";
+    assertEquals(full, chunks.get(0).getSql());
+    assertEquals(full, chunks.get(1).getSql());
+    assertEquals("INSERT INTO foo (id, name, batch) VALUES (:rows_0_id, :rows_0_name, :batch) ", chunks.get(2).getSql());
+    assertEquals(3, chunks.get(1).getRowCount());
+    assertEquals(1, chunks.get(2).getRowCount());
+    assertEquals(3, chunks.get(1).getParams().get("rows_0_id"));
+    assertEquals("N5", chunks.get(1).getParams().get("rows_2_name"));
+    assertEquals(6, chunks.get(1).getParams().get("batch"));
+    assertEquals(false, chunks.get(1).getParams().contains("rows_3_id"));
+    assertEquals(6, chunks.get(2).getParams().get("rows_0_id"));
+    assertEquals(6, chunks.get(1).getRowValues().size());
+    assertEquals("N4", chunks.get(1).getRowValues().get("rows_1_name"));
+  }
+
+  @Test
+  public void test_values_chunked_include() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id)",
+        "  @INCLUDE(Rows)",
+        "@NAME(Rows)",
+        "  @VALUES(:rows)",
+        "    (:id)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    List<Object> rows = Arrays.asList(Collections.singletonMap("id", 1), Collections.singletonMap("id", 2));
+    List<SqlChunk> chunks = bundle.getChunkedSql("Test1", new MapSqlParams("rows", rows));
+    assertEquals(1, chunks.size());
+    assertEquals("INSERT INTO foo (id) VALUES (:rows_0_id), (:rows_1_id) ", chunks.get(0).getSql());
+  }
+
+  @Test
+  public void test_values_chunked_maxRows() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id)",
+        "  @VALUES(:rows)",
+        "    (:id)"
+    );
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getMaxValuesRows() {
+        return 2;
+      }
+    };
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(config);
+    SqlParams[] rows = {new MapSqlParams("id", 1), new MapSqlParams("id", 2), new MapSqlParams("id", 3)};
+    List<SqlChunk> chunks = bundle.getChunkedSql("Test1", new MapSqlParams("rows", rows));
+    assertEquals(2, chunks.size());
+    assertEquals("INSERT INTO foo (id) VALUES (:rows_0_id), (:rows_1_id) ", chunks.get(0).getSql());
+    assertEquals("INSERT INTO foo (id) VALUES (:rows_0_id) ", chunks.get(1).getSql());
+  }
+
+  @Test
+  public void test_values_chunked_empty() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id)",
+        "  @VALUES(:rows)",
+        "    (:id)"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    SqlParams params = new MapSqlParams("rows", new ArrayList<Object>());
+    assertEquals(0, bundle.getChunkedSql("Test1", params).size());
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", params));
+  }
+
+  @Test
+  public void test_values_chunked_tooManyParameters() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (a, b, c)",
+        "  @VALUES(:rows)",
+        "    (:a, :b, :c)"
+    );
+    ElSqlConfig config = new ElSqlConfig("Test") {
+      @Override
+      public int getMaxBindParameters() {
+        return 2;
+      }
+    };
+    SqlFragments bundle = SqlFragments.parse(lines).withConfig(config);
+    SqlParams row = new MapSqlParams("a", 1).with("b", 2).with("c", 3);
+    SqlParams params = new MapSqlParams("rows", Arrays.asList(row));
+    assertThrows(IllegalArgumentException.class, () -> bundle.getChunkedSql("Test1", params));
+  }
+
+  @Test
+  public void test_values_invalid() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id)",
+        "  @VALUES(:rows)",
+        "    (:id)",
+        "@NAME(Test2)",
+        "  SELECT * FROM foo"
+    );
+    SqlFragments bundle = SqlFragments.parse(lines);
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", new MapSqlParams("rows", 3)));
+    assertThrows(IllegalArgumentException.class, () -> bundle.getSql("Test1", EmptySqlParams.INSTANCE));
+    assertThrows(IllegalArgumentException.class,
+        () -> bundle.getSql("Test1", new MapSqlParams("rows", Arrays.asList("x"))));
+    assertThrows(IllegalArgumentException.class, () -> bundle.getChunkedSql("Test2", EmptySqlParams.INSTANCE));
+  }
+
+  @Test
+  public void test_values_noIndentedLines() {
+    List<String> lines = Arrays.asList(
+        "@NAME(Test1)",
+        "  INSERT INTO foo (id)",
+        "  @VALUES(:rows)"
+    );
+    assertThrows(IllegalArgumentException.class, () -> SqlFragments.parse(lines));
+  }
+
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.elsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Test.
+ */
+public class JfrElSqlEventsTest {
+
+  @Test
+  public void test_loaded() {
+    assertEquals(JfrElSqlEvents.class, ElSqlEvents.INSTANCE.getClass());
+  }
+
+  @Test
+  public void test_events() throws IOException {
+    Path file = Files.createTempFile("elsql", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("com.opengamma.elsql.Parse");
+      recording.enable("com.opengamma.elsql.Render").withThreshold(Duration.ZERO);
+      recording.start();
+      ElSql elsql = ElSql.of(ElSqlConfig.DEFAULT, ElSql.class);
+      String sql = elsql.getSql("TestFoo");
+      String countSql = elsql.getCountSql("TestPaged", EmptySqlParams.INSTANCE);
+      recording.stop();
+      recording.dump(file);
+      
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      List<RecordedEvent> parseEvents = events.stream()
+          .filter(e -> e.getEventType().getName().equals("com.opengamma.elsql.Parse"))
+          .collect(Collectors.toList());
+      assertEquals(1, parseEvents.size());
+      assertTrue(parseEvents.get(0).getString("source").endsWith("ElSql.elsql"));
+      assertTrue(parseEvents.get(0).getInt("blocks") >= 3);
+      
+      List<RecordedEvent> renderEvents = events.stream()
+          .filter(e -> e.getEventType().getName().equals("com.opengamma.elsql.Render"))
+          .collect(Collectors.toList());
+      assertEquals(2, renderEvents.size());
+      assertEquals("TestFoo", renderEvents.get(0).getString("name"));
+      assertEquals(sql.hashCode(), renderEvents.get(0).getInt("shapeKey"));
+      assertEquals(sql.length(), renderEvents.get(0).getInt("length"));
+      assertEquals("TestPaged", renderEvents.get(1).getString("name"));
+      assertEquals(countSql.length(), renderEvents.get(1).getInt("length"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+}